@@ -0,0 +1,268 @@
+package com.datamap.engine;
+
+import com.datamap.util.ConfigManager;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Progress of resumable loads, one JSON file per load under
+ * ~/.data-mapping-wizard/checkpoints. A checkpoint fixes the chunks (key ranges) of a load
+ * when it starts, and records for each chunk the last key committed and whether it is
+ * complete, so a restarted run skips finished chunks and continues the others right after
+ * their last committed key. The file is deleted once every chunk is complete.
+ */
+public class CheckpointStore {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Checkpoint {
+        private String keyColumn;
+        private String watermarkType;
+        private String watermarkValue;
+        private long createdAt;
+        private List<Chunk> chunks = new ArrayList<>();
+
+        public String getKeyColumn() {
+            return keyColumn;
+        }
+
+        public void setKeyColumn(String keyColumn) {
+            this.keyColumn = keyColumn;
+        }
+
+        public String getWatermarkType() {
+            return watermarkType;
+        }
+
+        public void setWatermarkType(String watermarkType) {
+            this.watermarkType = watermarkType;
+        }
+
+        public String getWatermarkValue() {
+            return watermarkValue;
+        }
+
+        public void setWatermarkValue(String watermarkValue) {
+            this.watermarkValue = watermarkValue;
+        }
+
+        /**
+         * @return The upper watermark of an incremental load, fixed for all its runs
+         */
+        @JsonIgnore
+        public Object getWatermark() {
+            return StoredValue.parse(watermarkType, watermarkValue);
+        }
+
+        public void setWatermark(Object watermark) {
+            watermarkType = watermark == null ? null : StoredValue.typeOf(watermark);
+            watermarkValue = watermark == null ? null : StoredValue.text(watermark);
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public void setCreatedAt(long createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        public List<Chunk> getChunks() {
+            return chunks;
+        }
+
+        public void setChunks(List<Chunk> chunks) {
+            this.chunks = chunks;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Chunk {
+        private String lowerType;
+        private String lower;
+        private String upperType;
+        private String upper;
+        private boolean nullsOnly;
+        private String lastType;
+        private String last;
+        private long rows;
+        private boolean done;
+
+        public Chunk() {
+        }
+
+        Chunk(KeyRange range) {
+            if (range.getLower() != null) {
+                lowerType = StoredValue.typeOf(range.getLower());
+                lower = StoredValue.text(range.getLower());
+            }
+            if (range.getUpper() != null) {
+                upperType = StoredValue.typeOf(range.getUpper());
+                upper = StoredValue.text(range.getUpper());
+            }
+            nullsOnly = range.isNullsOnly();
+        }
+
+        /**
+         * @return What is left of the chunk: its key range above the last committed key
+         */
+        KeyRange remaining(String keyColumn) {
+            if (nullsOnly) {
+                return KeyRange.nulls(keyColumn);
+            }
+            KeyRange range = new KeyRange(keyColumn, StoredValue.parse(lowerType, lower),
+                    StoredValue.parse(upperType, upper), false);
+            return last == null ? range : range.after(StoredValue.parse(lastType, last));
+        }
+
+        public String getLowerType() {
+            return lowerType;
+        }
+
+        public void setLowerType(String lowerType) {
+            this.lowerType = lowerType;
+        }
+
+        public String getLower() {
+            return lower;
+        }
+
+        public void setLower(String lower) {
+            this.lower = lower;
+        }
+
+        public String getUpperType() {
+            return upperType;
+        }
+
+        public void setUpperType(String upperType) {
+            this.upperType = upperType;
+        }
+
+        public String getUpper() {
+            return upper;
+        }
+
+        public void setUpper(String upper) {
+            this.upper = upper;
+        }
+
+        public boolean isNullsOnly() {
+            return nullsOnly;
+        }
+
+        public void setNullsOnly(boolean nullsOnly) {
+            this.nullsOnly = nullsOnly;
+        }
+
+        public String getLastType() {
+            return lastType;
+        }
+
+        public void setLastType(String lastType) {
+            this.lastType = lastType;
+        }
+
+        /**
+         * @return The last key committed, or null if nothing of the chunk is committed yet
+         */
+        public String getLast() {
+            return last;
+        }
+
+        public void setLast(String last) {
+            this.last = last;
+        }
+
+        /**
+         * @return Rows committed in the chunk, over all runs
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        public void setRows(long rows) {
+            this.rows = rows;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public void setDone(boolean done) {
+            this.done = done;
+        }
+    }
+
+    private final File dir;
+
+    public CheckpointStore() {
+        this(ConfigManager.getCheckpointDir());
+    }
+
+    public CheckpointStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @param key The load, as for {@link WatermarkStore#key}
+     * @return Its checkpoint, or null if the load is not in progress
+     * @throws IOException If the file exists but cannot be read
+     */
+    public synchronized Checkpoint load(String key) throws IOException {
+        File file = file(key);
+        return file.exists() ? MAPPER.readValue(file, Checkpoint.class) : null;
+    }
+
+    /**
+     * Write a checkpoint, replacing its file through {@link ConfigManager#replaceFile}
+     */
+    public synchronized void save(String key, Checkpoint checkpoint) throws IOException {
+        dir.mkdirs();
+        ConfigManager.replaceFile(file(key), new ConfigManager.Contents() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                MAPPER.writerWithDefaultPrettyPrinter().writeValue(out, checkpoint);
+            }
+        });
+    }
+
+    /**
+     * Record that a chunk has committed its rows up to a key
+     *
+     * @param last The last key committed, or null to leave it unchanged
+     * @param rows Rows committed since the previous record
+     * @param done Whether the chunk is complete
+     */
+    public synchronized void progress(String key, Checkpoint checkpoint, int chunk, Object last, long rows,
+                                      boolean done) throws IOException {
+        Chunk entry = checkpoint.getChunks().get(chunk);
+        if (last != null) {
+            entry.setLastType(StoredValue.typeOf(last));
+            entry.setLast(StoredValue.text(last));
+        }
+        entry.setRows(entry.getRows() + rows);
+        entry.setDone(done);
+        save(key, checkpoint);
+    }
+
+    public synchronized void delete(String key) {
+        file(key).delete();
+    }
+
+    private File file(String key) {
+        CRC32 crc = new CRC32();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        String safeName = key.replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(dir, safeName + "-" + Long.toHexString(crc.getValue()) + ".json");
+    }
+}
@@ -0,0 +1,77 @@
+package com.datamap.engine;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Commits the rows of one checkpoint chunk every so many rows and records the last key
+ * committed, so an interrupted load can continue right after it. The rows arrive in key
+ * order; a commit is only taken where the key changes, so rows sharing a key on a
+ * non-unique partition column are never split between a committed and a lost part.
+ */
+class ChunkProgress {
+    private final CheckpointStore store;
+    private final String key;
+    private final CheckpointStore.Checkpoint checkpoint;
+    private final int chunk;
+    private final int keyIndex;
+    private final int interval;
+    private RowSink sink;
+    private Object last;
+    private long pending; // Rows written since the last commit
+
+    /**
+     * @param key The load, as for {@link WatermarkStore#key}
+     * @param chunk The index of the chunk in the checkpoint
+     * @param keyIndex The index of the key column in the source row
+     * @param interval Rows per commit; 0 commits only in {@link #finish()}
+     */
+    ChunkProgress(CheckpointStore store, String key, CheckpointStore.Checkpoint checkpoint, int chunk,
+                  int keyIndex, int interval) {
+        this.store = store;
+        this.key = key;
+        this.checkpoint = checkpoint;
+        this.chunk = chunk;
+        this.keyIndex = keyIndex;
+        this.interval = interval;
+    }
+
+    /**
+     * @param sink The sink the chunk is written to, opened with no commit interval of its own
+     */
+    void start(RowSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Called with each source row before its target row is written
+     */
+    void next(ColumnBatch source, int row) throws SQLException {
+        Object rowKey = source.column(keyIndex).get(row);
+        if (interval > 0 && pending >= interval && rowKey != null && !rowKey.equals(last)) {
+            commit(false);
+        }
+        last = rowKey;
+        pending++;
+    }
+
+    /**
+     * Commit the rest of the chunk and mark it complete
+     *
+     * @return The rows the sink has written
+     */
+    long finish() throws SQLException {
+        return commit(true);
+    }
+
+    private long commit(boolean done) throws SQLException {
+        long written = sink.finish();
+        try {
+            store.progress(key, checkpoint, chunk, last, pending, done);
+        } catch (IOException e) {
+            throw new SQLException("Committed, but failed to save the checkpoint of " + key + ": " + e.getMessage(), e);
+        }
+        pending = 0;
+        return written;
+    }
+}
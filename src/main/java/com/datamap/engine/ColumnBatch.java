@@ -0,0 +1,264 @@
+package com.datamap.engine;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Up to capacity rows stored column by column, the form rows take between reading,
+ * mapping and writing. Integral and double columns live in primitive arrays, text in one
+ * char buffer per column with an offset per row, NULLs in a bitmap; only other types
+ * (decimals, dates, binary, lookup results) are kept as objects. A batch is reused for
+ * batch after batch, so a full batch allocates only the Strings the JDBC driver returns.
+ * <p>
+ * A column can also be a single value for every row (a Constant mapping), and one column
+ * object can appear in several batches: a target batch shares the source batch's column
+ * wherever a mapping just copies a source value.
+ */
+class ColumnBatch {
+
+    enum Kind {
+        LONG, DOUBLE, STRING, OBJECT, CONSTANT
+    }
+
+    /**
+     * The values of one column
+     */
+    static final class Vector {
+        final Kind kind;
+        private final long[] nulls;
+        private long[] longs;
+        private double[] doubles;
+        private int[] offsets; // Row r is chars[offsets[r], offsets[r + 1])
+        private char[] chars;
+        private Object[] objects;
+        private Object constant;
+
+        Vector(Kind kind, int capacity) {
+            this.kind = kind;
+            this.nulls = new long[(capacity + 63) >>> 6];
+            switch (kind) {
+                case LONG:
+                    longs = new long[capacity];
+                    break;
+                case DOUBLE:
+                    doubles = new double[capacity];
+                    break;
+                case STRING:
+                    offsets = new int[capacity + 1];
+                    chars = new char[capacity * 16];
+                    break;
+                case OBJECT:
+                    objects = new Object[capacity];
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * @return A column holding the same value in every row
+         */
+        static Vector constant(Object value) {
+            Vector vector = new Vector(Kind.CONSTANT, 0);
+            vector.constant = value;
+            return vector;
+        }
+
+        boolean isNull(int row) {
+            if (kind == Kind.CONSTANT) {
+                return constant == null;
+            }
+            return (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+
+        long getLong(int row) {
+            return longs[row];
+        }
+
+        double getDouble(int row) {
+            return doubles[row];
+        }
+
+        /**
+         * @return The text buffer of a STRING column; row r spans {@link #start(int)} to {@link #end(int)}
+         */
+        char[] chars() {
+            return chars;
+        }
+
+        int start(int row) {
+            return offsets[row];
+        }
+
+        int end(int row) {
+            return offsets[row + 1];
+        }
+
+        /**
+         * @return The value of a row as an object, boxing primitives and building Strings
+         */
+        Object get(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            switch (kind) {
+                case LONG:
+                    return longs[row];
+                case DOUBLE:
+                    return doubles[row];
+                case STRING:
+                    return new String(chars, offsets[row], offsets[row + 1] - offsets[row]);
+                case OBJECT:
+                    return objects[row];
+                default:
+                    return constant;
+            }
+        }
+
+        /**
+         * Store a value of an OBJECT column
+         */
+        void set(int row, Object value) {
+            objects[row] = value;
+            mark(row, value == null);
+        }
+
+        /**
+         * Store column index of the current cursor row at row; rows of a STRING column must
+         * be read in order, starting at 0
+         */
+        void read(ResultSet rs, int index, int row) throws SQLException {
+            switch (kind) {
+                case LONG:
+                    longs[row] = rs.getLong(index);
+                    mark(row, rs.wasNull());
+                    break;
+                case DOUBLE:
+                    doubles[row] = rs.getDouble(index);
+                    mark(row, rs.wasNull());
+                    break;
+                case STRING:
+                    String text = rs.getString(index);
+                    int start = offsets[row];
+                    int length = text == null ? 0 : text.length();
+                    if (start + length > chars.length) {
+                        chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + length));
+                    }
+                    if (text != null) {
+                        text.getChars(0, length, chars, start);
+                    }
+                    offsets[row + 1] = start + length;
+                    mark(row, text == null);
+                    break;
+                default:
+                    set(row, rs.getObject(index));
+                    break;
+            }
+        }
+
+        private void mark(int row, boolean isNull) {
+            if (isNull) {
+                nulls[row >>> 6] |= 1L << row;
+            } else {
+                nulls[row >>> 6] &= ~(1L << row);
+            }
+        }
+    }
+
+    private final Vector[] columns;
+    private final int capacity;
+    private int size;
+
+    ColumnBatch(Vector[] columns, int capacity) {
+        this.columns = columns;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param kinds The kind of each column
+     * @param capacity Rows per batch
+     */
+    ColumnBatch(Kind[] kinds, int capacity) {
+        this(new Vector[kinds.length], capacity);
+        for (int i = 0; i < kinds.length; i++) {
+            columns[i] = new Vector(kinds[i], capacity);
+        }
+    }
+
+    /**
+     * @return The column kinds a result set is read into: LONG for signed integral columns,
+     * DOUBLE for double precision, STRING for text, OBJECT for the rest
+     */
+    static Kind[] kinds(ResultSetMetaData metadata) throws SQLException {
+        Kind[] kinds = new Kind[metadata.getColumnCount()];
+        for (int i = 0; i < kinds.length; i++) {
+            switch (metadata.getColumnType(i + 1)) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    // An unsigned BIGINT may not fit a long
+                    kinds[i] = metadata.isSigned(i + 1) ? Kind.LONG : Kind.OBJECT;
+                    break;
+                case Types.DOUBLE:
+                case Types.FLOAT:
+                    kinds[i] = Kind.DOUBLE;
+                    break;
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.LONGNVARCHAR:
+                    kinds[i] = Kind.STRING;
+                    break;
+                default:
+                    kinds[i] = Kind.OBJECT;
+                    break;
+            }
+        }
+        return kinds;
+    }
+
+    int width() {
+        return columns.length;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    Vector column(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Read the next rows of a cursor into the batch, replacing its contents
+     *
+     * @return false once the cursor is exhausted; the batch may still hold its last rows
+     */
+    boolean read(ResultSet rs) throws SQLException {
+        size = 0;
+        while (size < capacity) {
+            if (!rs.next()) {
+                return false;
+            }
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].read(rs, i + 1, size);
+            }
+            size++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,263 @@
+package com.datamap.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The planner's estimates for running a model, from EXPLAIN of the queries a run would
+ * issue (see {@link MappingEngine#explain(MappingModel)}). Costs are in the source
+ * database's own units, so they compare within one database, not across databases.
+ */
+public class CostPreview {
+
+    public enum Strategy {
+        /** Joined into the source query; its cost is part of the table's */
+        PUSHED_DOWN,
+        /** The lookup side is read once into memory */
+        HASH_JOIN,
+        /** One query per source row */
+        PER_ROW
+    }
+
+    public static class LookupCost {
+        private final String targetTable;
+        private final String targetColumns;
+        private final Strategy strategy;
+        private String sql;
+        private double rowsPerCall;
+        private double cost;
+        private double totalCost;
+        private final List<String> fullScans = new ArrayList<>();
+        private String error;
+
+        public LookupCost(String targetTable, String targetColumns, Strategy strategy) {
+            this.targetTable = targetTable;
+            this.targetColumns = targetColumns;
+            this.strategy = strategy;
+        }
+
+        public String getTargetTable() {
+            return targetTable;
+        }
+
+        /**
+         * @return The target columns the lookup fills, comma separated
+         */
+        public String getTargetColumns() {
+            return targetColumns;
+        }
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        /**
+         * @return The lookup query, null when pushed down
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        public double getRowsPerCall() {
+            return rowsPerCall;
+        }
+
+        /**
+         * @return The cost of one execution of the lookup query
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        /**
+         * @return The cost over the whole run: once for a hash join, once per source row otherwise
+         */
+        public double getTotalCost() {
+            return totalCost;
+        }
+
+        public void setEstimate(String sql, double rowsPerCall, double cost, double totalCost, List<String> fullScans) {
+            this.sql = sql;
+            this.rowsPerCall = rowsPerCall;
+            this.cost = cost;
+            this.totalCost = totalCost;
+            this.fullScans.clear();
+            this.fullScans.addAll(fullScans);
+        }
+
+        /**
+         * @return Large tables the lookup query reads in full, with their row counts
+         */
+        public List<String> getFullScans() {
+            return Collections.unmodifiableList(fullScans);
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            String line = targetTable + "." + targetColumns + " (" + strategy.name().toLowerCase().replace('_', ' ') + ")";
+            if (error != null) {
+                return line + " - FAILED: " + error;
+            }
+            if (strategy == Strategy.PUSHED_DOWN) {
+                return line;
+            }
+            line += String.format(": %.0f rows, cost %.1f", rowsPerCall, cost);
+            if (strategy == Strategy.PER_ROW) {
+                line += String.format(" per row, %.0f in total", totalCost);
+            }
+            if (!fullScans.isEmpty()) {
+                line += ", full scan of " + join(fullScans);
+            }
+            return line;
+        }
+    }
+
+    public static class TableCost {
+        private final String targetTable;
+        private String sql;
+        private double estimatedRows;
+        private double cost;
+        private final List<String> fullScans = new ArrayList<>();
+        private final List<LookupCost> lookups = new ArrayList<>();
+        private String error;
+
+        public TableCost(String targetTable) {
+            this.targetTable = targetTable;
+        }
+
+        public String getTargetTable() {
+            return targetTable;
+        }
+
+        /**
+         * @return The source query of the table, without partition or watermark conditions
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        public double getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        public void setEstimate(String sql, double estimatedRows, double cost, List<String> fullScans) {
+            this.sql = sql;
+            this.estimatedRows = estimatedRows;
+            this.cost = cost;
+            this.fullScans.clear();
+            this.fullScans.addAll(fullScans);
+        }
+
+        /**
+         * @return Large tables the source query reads in full; a full load always reads the
+         * driving table that way, the lookup tables joined to it should not be
+         */
+        public List<String> getFullScans() {
+            return Collections.unmodifiableList(fullScans);
+        }
+
+        public List<LookupCost> getLookups() {
+            return Collections.unmodifiableList(lookups);
+        }
+
+        public void addLookup(LookupCost lookup) {
+            lookups.add(lookup);
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return targetTable + " - FAILED: " + error;
+            }
+            String line = String.format("%s: ~%.0f rows, cost %.1f", targetTable, estimatedRows, cost);
+            if (!fullScans.isEmpty()) {
+                line += ", full scan of " + join(fullScans);
+            }
+            for (LookupCost lookup : lookups) {
+                line += "\n    " + lookup;
+            }
+            return line;
+        }
+    }
+
+    private final List<TableCost> tables = new ArrayList<>();
+
+    public void addTable(TableCost table) {
+        tables.add(table);
+    }
+
+    public List<TableCost> getTables() {
+        return Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * @param count The number of lookups wanted
+     * @return The lookups of all tables with the highest total cost, most expensive first
+     */
+    public List<LookupCost> getMostExpensiveLookups(int count) {
+        List<LookupCost> lookups = new ArrayList<>();
+        for (TableCost table : tables) {
+            for (LookupCost lookup : table.getLookups()) {
+                if (lookup.getError() == null && lookup.getStrategy() != Strategy.PUSHED_DOWN) {
+                    lookups.add(lookup);
+                }
+            }
+        }
+        Collections.sort(lookups, new Comparator<LookupCost>() {
+            @Override
+            public int compare(LookupCost a, LookupCost b) {
+                return Double.compare(b.getTotalCost(), a.getTotalCost());
+            }
+        });
+        return lookups.subList(0, Math.min(count, lookups.size()));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (TableCost table : tables) {
+            text.append(table).append('\n');
+        }
+        List<LookupCost> expensive = getMostExpensiveLookups(5);
+        if (!expensive.isEmpty()) {
+            text.append("\nMost expensive lookups:\n");
+            for (LookupCost lookup : expensive) {
+                text.append("    ").append(lookup).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static String join(List<String> items) {
+        StringBuilder text = new StringBuilder();
+        for (String item : items) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(item);
+        }
+        return text.toString();
+    }
+}
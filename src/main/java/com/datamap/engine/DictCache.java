@@ -0,0 +1,174 @@
+package com.datamap.engine;
+
+import com.datamap.model.DataSource;
+import com.datamap.util.DatabaseConnectionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory dictionaries for Dict mappings. Each (data source, dictType) pair is read
+ * with a single query into a code -> name hash map, which every Dict mapping of that type
+ * then shares, instead of querying the dictionary table once per row.
+ * <p>
+ * Codes are matched as text, the way the database compares a bound value with a character
+ * code; numbers on either side are first normalised like {@link HashLookup} join keys, so
+ * a DOUBLE code 1.0 finds the code 1.
+ * When a dictionary is reloaded is decided by the {@link RefreshPolicy}; a table that is
+ * being loaded keeps the dictionary it started with.
+ */
+public class DictCache {
+
+    public enum RefreshPolicy {
+        /** Reload at the start of every {@link MappingEngine#run} */
+        PER_RUN,
+        /** Reload when older than the refresh interval */
+        INTERVAL,
+        /** Load once for the lifetime of the engine */
+        NEVER
+    }
+
+    /**
+     * The codes and names of one dictType, with lookup counters
+     */
+    public static class Dictionary {
+        private final String dataSourceName;
+        private final String dictType;
+        private final Map<String, Object> names;
+        private final long loadedAt;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        Dictionary(String dataSourceName, String dictType, Map<String, Object> names) {
+            this.dataSourceName = dataSourceName;
+            this.dictType = dictType;
+            this.names = names;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * @param code The code from the source row
+         * @return The dictionary name, or null if the code is null or not in the dictionary
+         */
+        public Object lookup(Object code) {
+            if (code == null) {
+                return null;
+            }
+            String key = HashLookup.key(code);
+            Object name = names.get(key);
+            if (name != null || names.containsKey(key)) {
+                hits.increment();
+            } else {
+                misses.increment();
+            }
+            return name;
+        }
+
+        public String getDictType() {
+            return dictType;
+        }
+
+        public int size() {
+            return names.size();
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("dict %s@%s: %d codes, %d hits, %d misses",
+                    dictType, dataSourceName, names.size(), hits.sum(), misses.sum());
+        }
+    }
+
+    private final EngineOptions options;
+    private final Map<String, Dictionary> dictionaries = new LinkedHashMap<>();
+
+    public DictCache(EngineOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Called when a run starts; drops everything under {@link RefreshPolicy#PER_RUN}
+     */
+    public synchronized void startRun() {
+        if (options.getDictRefreshPolicy() == RefreshPolicy.PER_RUN) {
+            dictionaries.clear();
+        }
+    }
+
+    /**
+     * @param dataSource The data source holding the dictionary table
+     * @param dictType The dictionary type
+     * @return The cached dictionary, loaded or reloaded as the refresh policy requires
+     * @throws ClassNotFoundException If the JDBC driver is missing
+     * @throws SQLException If the dictionary cannot be read
+     */
+    public synchronized Dictionary get(DataSource dataSource, String dictType)
+            throws ClassNotFoundException, SQLException {
+        String key = dataSource.getName() + "\u0000" + dictType;
+        Dictionary dictionary = dictionaries.get(key);
+        if (dictionary == null || isStale(dictionary)) {
+            dictionary = load(dataSource, dictType);
+            dictionaries.put(key, dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * @return The dictionaries currently cached, with their counters
+     */
+    public synchronized List<Dictionary> getDictionaries() {
+        return new ArrayList<>(dictionaries.values());
+    }
+
+    public synchronized void clear() {
+        dictionaries.clear();
+    }
+
+    private boolean isStale(Dictionary dictionary) {
+        return options.getDictRefreshPolicy() == RefreshPolicy.INTERVAL &&
+                System.currentTimeMillis() - dictionary.getLoadedAt() >= options.getDictRefreshIntervalMillis();
+    }
+
+    private Dictionary load(DataSource dataSource, String dictType) throws ClassNotFoundException, SQLException {
+        SqlDialect dialect = SqlDialect.of(dataSource);
+        String sql = "SELECT " + dialect.quote(options.getDictCodeColumn()) +
+                ", " + dialect.quote(options.getDictNameColumn()) +
+                " FROM " + dialect.quote(options.getDictTable()) +
+                " WHERE " + dialect.quote(options.getDictTypeColumn()) + " = ?";
+        Map<String, Object> names = new HashMap<>();
+        try (Connection conn = DatabaseConnectionManager.getConnection(dataSource);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, dictType);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String code = HashLookup.key(rs.getObject(1));
+                    // A duplicated code keeps the first name read
+                    if (code != null && !names.containsKey(code)) {
+                        names.put(code, rs.getObject(2));
+                    }
+                }
+            }
+        }
+        return new Dictionary(dataSource.getName(), dictType, names);
+    }
+}
@@ -0,0 +1,358 @@
+package com.datamap.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of a mapping run. The defaults suit the dictionary layout used by the
+ * generated code: one table holding (dict_type, code, name) rows.
+ */
+public class EngineOptions {
+
+    public enum WriteMode {
+        /** Plain INSERTs (or COPY); rows already in the target cause key violations */
+        INSERT,
+        /** INSERT or update by target primary key, so reruns are idempotent */
+        UPSERT
+    }
+
+    /** Rows per checkpoint of a resumable load without a commit interval */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10000;
+
+    private String dictTable = "dict";
+    private String dictTypeColumn = "dict_type";
+    private String dictCodeColumn = "code";
+    private String dictNameColumn = "name";
+    private String dictDataSourceName; // null: the data source of the Dict mapping's source table
+    private DictCache.RefreshPolicy dictRefreshPolicy = DictCache.RefreshPolicy.PER_RUN;
+    private long dictRefreshIntervalMillis = 10 * 60 * 1000L;
+    private boolean truncateTarget;
+    private WriteMode writeMode = WriteMode.INSERT;
+    private int batchSize = 1000; // Rows per executeBatch round trip
+    private int commitInterval; // Rows per commit; 0 commits each table once, at the end
+    private boolean resumable;
+    private boolean copyToPostgres = true;
+    private boolean pushDownLookups = true;
+    private boolean hashJoinLookups = true;
+    private long lookupMemoryBudget = Runtime.getRuntime().maxMemory() / 4; // Heap bytes of all hash join tables
+    private int partitions = 1;
+    private boolean pipelined = true;
+    private int pipelineBatchSize = 500;
+    private int pipelineQueueCapacity = 4;
+    private int parallelism = 4;
+    private final Map<String, String> partitionColumns = new HashMap<>();
+    private final Map<String, String> watermarkColumns = new HashMap<>();
+
+    public String getDictTable() {
+        return dictTable;
+    }
+
+    public void setDictTable(String dictTable) {
+        this.dictTable = dictTable;
+    }
+
+    public String getDictTypeColumn() {
+        return dictTypeColumn;
+    }
+
+    public void setDictTypeColumn(String dictTypeColumn) {
+        this.dictTypeColumn = dictTypeColumn;
+    }
+
+    public String getDictCodeColumn() {
+        return dictCodeColumn;
+    }
+
+    public void setDictCodeColumn(String dictCodeColumn) {
+        this.dictCodeColumn = dictCodeColumn;
+    }
+
+    public String getDictNameColumn() {
+        return dictNameColumn;
+    }
+
+    public void setDictNameColumn(String dictNameColumn) {
+        this.dictNameColumn = dictNameColumn;
+    }
+
+    public String getDictDataSourceName() {
+        return dictDataSourceName;
+    }
+
+    public void setDictDataSourceName(String dictDataSourceName) {
+        this.dictDataSourceName = dictDataSourceName;
+    }
+
+    public DictCache.RefreshPolicy getDictRefreshPolicy() {
+        return dictRefreshPolicy;
+    }
+
+    /**
+     * @param dictRefreshPolicy When cached dictionaries are read again from the dictionary table
+     */
+    public void setDictRefreshPolicy(DictCache.RefreshPolicy dictRefreshPolicy) {
+        this.dictRefreshPolicy = dictRefreshPolicy;
+    }
+
+    public long getDictRefreshIntervalMillis() {
+        return dictRefreshIntervalMillis;
+    }
+
+    /**
+     * @param dictRefreshIntervalMillis Maximum age of a dictionary under {@link DictCache.RefreshPolicy#INTERVAL}
+     */
+    public void setDictRefreshIntervalMillis(long dictRefreshIntervalMillis) {
+        this.dictRefreshIntervalMillis = dictRefreshIntervalMillis;
+    }
+
+    public boolean isTruncateTarget() {
+        return truncateTarget;
+    }
+
+    /**
+     * @param truncateTarget Empty each target table before writing to it
+     */
+    public void setTruncateTarget(boolean truncateTarget) {
+        this.truncateTarget = truncateTarget;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    /**
+     * @param writeMode How rows are written to the target; UPSERT needs the target's primary
+     *                  key columns mapped, and never uses COPY
+     */
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Rows sent to the target per executeBatch call; 1 disables batching
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * @param commitInterval Commit after this many rows. Keeps transactions short on large loads,
+     *                       but a failure then leaves the rows committed before it in place.
+     *                       0 (the default) loads each table in a single transaction.
+     */
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 0) {
+            throw new IllegalArgumentException("Commit interval must not be negative: " + commitInterval);
+        }
+        this.commitInterval = commitInterval;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Make loads resumable: each table is read in key order, in chunks whose progress is
+     * checkpointed (see {@link CheckpointStore}) at every commit, every commitInterval rows or
+     * {@link #DEFAULT_CHECKPOINT_INTERVAL} rows when none is set. A run that finds the
+     * checkpoint of an interrupted one skips the finished chunks and continues the others
+     * after their last committed key, without truncating the target again.
+     * <p>
+     * Needs a partition column for each table (see {@link #setPartitionColumn}) or a
+     * single-column integral or date/time primary key. A crash between a commit and its
+     * checkpoint loads the rows of that commit twice on resume; use UPSERT to make that harmless.
+     *
+     * @param resumable Checkpoint loads and resume interrupted ones
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * @return Rows per commit and checkpoint of a resumable load
+     */
+    public int getCheckpointInterval() {
+        return commitInterval > 0 ? commitInterval : DEFAULT_CHECKPOINT_INTERVAL;
+    }
+
+    public boolean isPushDownLookups() {
+        return pushDownLookups;
+    }
+
+    /**
+     * @param pushDownLookups Resolve ExternalConnection mappings whose tables share the driving
+     *                        table's data source inside the source query, instead of per row
+     */
+    public void setPushDownLookups(boolean pushDownLookups) {
+        this.pushDownLookups = pushDownLookups;
+    }
+
+    public boolean isHashJoinLookups() {
+        return hashJoinLookups;
+    }
+
+    /**
+     * @param hashJoinLookups Resolve ExternalConnection mappings that cannot be pushed down by
+     *                        loading their lookup side into memory once, instead of per row.
+     *                        Switch off for small driving tables against huge lookup tables.
+     */
+    public void setHashJoinLookups(boolean hashJoinLookups) {
+        this.hashJoinLookups = hashJoinLookups;
+    }
+
+    public long getLookupMemoryBudget() {
+        return lookupMemoryBudget;
+    }
+
+    /**
+     * @param lookupMemoryBudget Approximate heap bytes all hash join tables of a run may use
+     *                           together, across lookups and concurrently loaded tables;
+     *                           past it, partitions are spilled to memory-mapped temp files.
+     *                           0 for no limit. Defaults to a quarter of the maximum heap.
+     *                           Read when the engine is created.
+     */
+    public void setLookupMemoryBudget(long lookupMemoryBudget) {
+        if (lookupMemoryBudget < 0) {
+            throw new IllegalArgumentException("Lookup memory budget must not be negative: " + lookupMemoryBudget);
+        }
+        this.lookupMemoryBudget = lookupMemoryBudget;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * @param pipelined Read, map and write on three threads connected by bounded queues,
+     *                  instead of one batch at a time on a single thread
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public int getPipelineBatchSize() {
+        return pipelineBatchSize;
+    }
+
+    /**
+     * @param pipelineBatchSize Rows read, mapped and written as one column batch, and handed
+     *                          from one pipeline stage to the next at a time
+     */
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        if (pipelineBatchSize < 1) {
+            throw new IllegalArgumentException("Pipeline batch size must be at least 1: " + pipelineBatchSize);
+        }
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
+    public int getPipelineQueueCapacity() {
+        return pipelineQueueCapacity;
+    }
+
+    /**
+     * @param pipelineQueueCapacity Batches waiting between two stages before the earlier
+     *                              stage blocks; bounds the rows in flight per partition
+     */
+    public void setPipelineQueueCapacity(int pipelineQueueCapacity) {
+        if (pipelineQueueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + pipelineQueueCapacity);
+        }
+        this.pipelineQueueCapacity = pipelineQueueCapacity;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @param partitions Key ranges each source table is split into for parallel loading;
+     *                   1 (the default) reads every table with a single query
+     */
+    public void setPartitions(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Partitions must be at least 1: " + partitions);
+        }
+        this.partitions = partitions;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism Partitions of a table loaded at the same time, each on its own
+     *                    connections; further limited by the connection pool sizes
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param sourceTable A source table
+     * @return The column its key ranges are split on, or null to use a single-column primary key
+     */
+    public String getPartitionColumn(String sourceTable) {
+        return partitionColumns.get(sourceTable);
+    }
+
+    /**
+     * @param sourceTable A source table
+     * @param column An integral or date/time column to split it on, or null for the primary key
+     */
+    public void setPartitionColumn(String sourceTable, String column) {
+        if (column == null) {
+            partitionColumns.remove(sourceTable);
+        } else {
+            partitionColumns.put(sourceTable, column);
+        }
+    }
+
+    /**
+     * @param sourceTable A source table
+     * @return The column its loads are incremental on, or null for full loads
+     */
+    public String getWatermarkColumn(String sourceTable) {
+        return watermarkColumns.get(sourceTable);
+    }
+
+    /**
+     * Make the loads from a source table incremental: each run only reads rows whose
+     * watermark column is above the value the previous successful run loaded up to. The
+     * column must only grow, like an updated_at timestamp or a sequence id.
+     *
+     * @param sourceTable A source table
+     * @param column Its watermark column, or null for full loads
+     */
+    public void setWatermarkColumn(String sourceTable, String column) {
+        if (column == null) {
+            watermarkColumns.remove(sourceTable);
+        } else {
+            watermarkColumns.put(sourceTable, column);
+        }
+    }
+
+    public boolean isCopyToPostgres() {
+        return copyToPostgres;
+    }
+
+    /**
+     * @param copyToPostgres Load PostgreSQL targets with COPY instead of batched INSERTs
+     */
+    public void setCopyToPostgres(boolean copyToPostgres) {
+        this.copyToPostgres = copyToPostgres;
+    }
+}
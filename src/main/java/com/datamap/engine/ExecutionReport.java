@@ -0,0 +1,227 @@
+package com.datamap.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome and timing of a mapping run, one entry per target table
+ */
+public class ExecutionReport {
+
+    public static class TableResult {
+        private final String targetTable;
+        private long rowsRead;
+        private long rowsWritten;
+        private long elapsedMillis;
+        private int partitions = 1;
+        private boolean incremental;
+        private Object watermarkFrom;
+        private Object watermarkTo;
+        private boolean resumed;
+        private final List<QueueStats> queues = new ArrayList<>();
+        private String error;
+
+        public TableResult(String targetTable) {
+            this.targetTable = targetTable;
+        }
+
+        public String getTargetTable() {
+            return targetTable;
+        }
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public void setRowsRead(long rowsRead) {
+            this.rowsRead = rowsRead;
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        public void setRowsWritten(long rowsWritten) {
+            this.rowsWritten = rowsWritten;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public void setElapsedMillis(long elapsedMillis) {
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return The number of key ranges the source table was read in
+         */
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public void setPartitions(int partitions) {
+            this.partitions = partitions;
+        }
+
+        /**
+         * @return Whether only the rows between two watermarks were loaded
+         */
+        public boolean isIncremental() {
+            return incremental;
+        }
+
+        /**
+         * @return The watermark the load started above, null for the first load
+         */
+        public Object getWatermarkFrom() {
+            return watermarkFrom;
+        }
+
+        /**
+         * @return The watermark the load went up to, null if the source was empty
+         */
+        public Object getWatermarkTo() {
+            return watermarkTo;
+        }
+
+        public void setWatermark(Object from, Object to) {
+            this.incremental = true;
+            this.watermarkFrom = from;
+            this.watermarkTo = to;
+        }
+
+        /**
+         * @return Whether the load continued from the checkpoint of an interrupted run
+         */
+        public boolean isResumed() {
+            return resumed;
+        }
+
+        public void setResumed(boolean resumed) {
+            this.resumed = resumed;
+        }
+
+        /**
+         * @return The pipeline queues of the table, summed over its partitions; empty when
+         * the table was loaded without a pipeline
+         */
+        public synchronized List<QueueStats> getQueueStats() {
+            return new ArrayList<>(queues);
+        }
+
+        public synchronized void addQueueStats(QueueStats[] stats) {
+            for (int i = 0; i < stats.length; i++) {
+                if (i < queues.size()) {
+                    queues.set(i, queues.get(i).merge(stats[i]));
+                } else {
+                    queues.add(stats[i]);
+                }
+            }
+        }
+
+        /**
+         * @return The failure message, or null if the table was loaded successfully
+         */
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return Rows written per second, 0 if nothing was timed
+         */
+        public double getRowsPerSecond() {
+            return elapsedMillis == 0 ? 0 : rowsWritten * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            String line = String.format("%s: %d read, %d written in %d ms (%.0f rows/s)",
+                    targetTable, rowsRead, rowsWritten, elapsedMillis, getRowsPerSecond());
+            if (partitions > 1) {
+                line += ", " + partitions + " partitions";
+            }
+            if (incremental) {
+                line += ", watermark " + (watermarkFrom != null ? watermarkFrom : "(start)") + " -> " + watermarkTo;
+            }
+            if (resumed) {
+                line += ", resumed from checkpoint";
+            }
+            for (QueueStats queue : getQueueStats()) {
+                line += "\n    " + queue;
+            }
+            return error == null ? line : line + " - FAILED: " + error;
+        }
+    }
+
+    private final List<TableResult> tables = new ArrayList<>();
+    private final List<DictCache.Dictionary> dictionaries = new ArrayList<>();
+    private long elapsedMillis;
+
+    public void addTable(TableResult result) {
+        tables.add(result);
+    }
+
+    public List<TableResult> getTables() {
+        return Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * @return The dictionaries cached after the run, with their hit and miss counters
+     */
+    public List<DictCache.Dictionary> getDictionaries() {
+        return Collections.unmodifiableList(dictionaries);
+    }
+
+    public void setDictionaries(List<DictCache.Dictionary> dictionaries) {
+        this.dictionaries.clear();
+        this.dictionaries.addAll(dictionaries);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRowsWritten() {
+        long total = 0;
+        for (TableResult table : tables) {
+            total += table.getRowsWritten();
+        }
+        return total;
+    }
+
+    public boolean isSuccess() {
+        for (TableResult table : tables) {
+            if (!table.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (TableResult table : tables) {
+            text.append(table).append('\n');
+        }
+        for (DictCache.Dictionary dictionary : dictionaries) {
+            text.append(dictionary).append('\n');
+        }
+        text.append(String.format("Total: %d rows in %d ms", getRowsWritten(), elapsedMillis));
+        return text.toString();
+    }
+}
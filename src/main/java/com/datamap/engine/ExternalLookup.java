@@ -0,0 +1,102 @@
+package com.datamap.engine;
+
+import com.datamap.model.SourceColumn;
+import com.datamap.model.mapping.ExternalConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Resolves {@link ExternalConnection} mappings with one query per source row: selects the
+ * finalSelectColumns from whereSelectTable (extended by the LEFT JOINs) where whereIdColumn
+ * equals the source id value. All mappings given must share one join signature.
+ */
+public class ExternalLookup implements GroupLookup, AutoCloseable {
+    private final PreparedStatement query;
+    private final int width;
+    private Object lastId;
+    private Object[] lastValues;
+
+    /**
+     * @param conn The connection of the lookup tables' data source
+     * @param dialect Its dialect
+     * @param group Mappings with the same {@link ExternalConnection#getJoinSignature()}
+     * @throws SQLException If the query cannot be prepared
+     */
+    public ExternalLookup(Connection conn, SqlDialect dialect, List<ExternalConnection> group) throws SQLException {
+        this.width = group.size();
+        this.query = conn.prepareStatement(sql(dialect, group));
+    }
+
+    /**
+     * @return The query of a group, with one ? for the source id value
+     */
+    static String sql(SqlDialect dialect, List<ExternalConnection> group) {
+        ExternalConnection first = group.get(0);
+        StringBuilder select = new StringBuilder("SELECT ");
+        for (int i = 0; i < group.size(); i++) {
+            if (i > 0) {
+                select.append(", ");
+            }
+            select.append(column(dialect, group.get(i).getFinalSelectColumn()));
+        }
+        return select + " " + fromClause(dialect, first) + " WHERE " + column(dialect, first.getWhereIdColumn()) + " = ?";
+    }
+
+    /**
+     * @param id The value of the source id column
+     * @return The selected values of the first matching row, or null if there is none.
+     * Consecutive calls with the same id reuse the previous result.
+     * @throws SQLException If the query fails
+     */
+    @Override
+    public Object[] lookup(Object id) throws SQLException {
+        if (id == null) {
+            return null;
+        }
+        if (id.equals(lastId)) {
+            return lastValues;
+        }
+        query.setObject(1, id);
+        Object[] values = null;
+        try (ResultSet rs = query.executeQuery()) {
+            if (rs.next()) {
+                values = new Object[width];
+                for (int i = 0; i < width; i++) {
+                    values[i] = rs.getObject(i + 1);
+                }
+            }
+        }
+        lastId = id;
+        lastValues = values;
+        return values;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        query.close();
+    }
+
+    /**
+     * Build "FROM whereSelectTable LEFT JOIN ..." for a mapping
+     *
+     * @throws IllegalArgumentException If the joins do not form a path to the final select table
+     */
+    static String fromClause(SqlDialect dialect, ExternalConnection mapping) {
+        JoinPath path = JoinPath.of(mapping);
+        StringBuilder from = new StringBuilder("FROM ").append(dialect.quote(path.getWhereTable()));
+        for (JoinPath.Step step : path.getSteps()) {
+            from.append(" LEFT JOIN ").append(dialect.quote(step.table))
+                    .append(" ON ").append(column(dialect, step.joinedTo))
+                    .append(" = ").append(column(dialect, step.joinColumn));
+        }
+        return from.toString();
+    }
+
+    static String column(SqlDialect dialect, SourceColumn column) {
+        return dialect.quote(column.getTable().getName()) + "." + dialect.quote(column.getName());
+    }
+}
@@ -0,0 +1,18 @@
+package com.datamap.engine;
+
+import java.sql.SQLException;
+
+/**
+ * Resolves a group of {@link com.datamap.model.mapping.ExternalConnection} mappings that
+ * share one join signature: a single lookup per id yields the finalSelectColumn of every
+ * mapping in the group.
+ */
+interface GroupLookup {
+
+    /**
+     * @param id The value of the shared source id column
+     * @return The selected values in group order, or null if nothing matches the id
+     * @throws SQLException If the lookup query fails
+     */
+    Object[] lookup(Object id) throws SQLException;
+}
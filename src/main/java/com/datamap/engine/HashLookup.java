@@ -0,0 +1,276 @@
+package com.datamap.engine;
+
+import com.datamap.model.DataSource;
+import com.datamap.model.mapping.ExternalConnection;
+import com.datamap.util.DatabaseConnectionManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves an {@link ExternalConnection} with a hash join, for lookup tables in another
+ * data source than the driving table, where the lookup cannot be pushed into the source
+ * query. The lookup side (whereSelectTable with its LEFT JOINs) is streamed once into a
+ * hash table keyed on whereIdColumn, which is then probed for every driving row.
+ * <p>
+ * The two sides come from different databases, so their id values may arrive as different
+ * Java types; keys are therefore compared in a normalized text form, numbers by value
+ * (1, 1L and 1.00 are the same key). As with the per-row query, the first row read for an
+ * id wins. A group of mappings sharing one join signature is served by a single table
+ * holding all their finalSelectColumns.
+ * <p>
+ * The table is split into hash partitions on the key. When a row no longer fits the memory
+ * budget, which may be shared with other tables ({@link MemoryBudget}), the largest
+ * partitions are spilled one by one to
+ * memory-mapped temp files ({@link SpillPartition}), and later rows of a spilled partition
+ * go straight to its file, so lookup tables far larger than the heap still join without
+ * falling back to per-row queries. Unlike a textbook grace hash join the driving rows are
+ * not partitioned too: they stream through in key order, so a spilled partition is probed
+ * in place through its on-disk index.
+ */
+public class HashLookup implements GroupLookup, AutoCloseable {
+    private static final int PARTITION_BITS = 6;
+
+    private final List<Map<String, Object[]>> partitions = new ArrayList<>();
+    private final long[] partitionBytes = new long[1 << PARTITION_BITS];
+    private final SpillPartition[] spilled = new SpillPartition[1 << PARTITION_BITS];
+    private final int width;
+    private final MemoryBudget budget;
+    private long memoryUsed;
+    private int size;
+
+    /**
+     * A hash join table held entirely in memory
+     *
+     * @param dataSource The data source of the lookup tables
+     * @param group Mappings with the same {@link ExternalConnection#getJoinSignature()}
+     * @throws ClassNotFoundException If the JDBC driver is missing
+     * @throws SQLException If the lookup side cannot be read
+     */
+    public HashLookup(DataSource dataSource, List<ExternalConnection> group)
+            throws ClassNotFoundException, SQLException {
+        this(dataSource, group, new MemoryBudget(0));
+    }
+
+    /**
+     * @param dataSource The data source of the lookup tables
+     * @param group Mappings with the same {@link ExternalConnection#getJoinSignature()}
+     * @param memoryBudget Approximate heap bytes the table may hold before partitions are
+     *                     spilled to disk; 0 for no limit
+     * @throws ClassNotFoundException If the JDBC driver is missing
+     * @throws SQLException If the lookup side cannot be read, or spilling fails
+     */
+    public HashLookup(DataSource dataSource, List<ExternalConnection> group, long memoryBudget)
+            throws ClassNotFoundException, SQLException {
+        this(dataSource, group, new MemoryBudget(memoryBudget));
+    }
+
+    /**
+     * @param dataSource The data source of the lookup tables
+     * @param group Mappings with the same {@link ExternalConnection#getJoinSignature()}
+     * @param budget Heap shared with other hash join tables; held until {@link #close()}
+     * @throws ClassNotFoundException If the JDBC driver is missing
+     * @throws SQLException If the lookup side cannot be read, or spilling fails
+     */
+    HashLookup(DataSource dataSource, List<ExternalConnection> group, MemoryBudget budget)
+            throws ClassNotFoundException, SQLException {
+        this.budget = budget;
+        for (int i = 0; i < spilled.length; i++) {
+            partitions.add(new HashMap<String, Object[]>());
+        }
+        this.width = group.size();
+        try (Connection conn = DatabaseConnectionManager.getConnection(dataSource);
+             SourceCursor cursor = new SourceCursor(conn, dataSource, sql(SqlDialect.of(dataSource), group))) {
+            ResultSet rs = cursor.getResultSet();
+            while (rs.next()) {
+                String key = key(rs.getObject(1));
+                if (key == null) {
+                    continue;
+                }
+                int partition = partition(key);
+                if (spilled[partition] != null) {
+                    // Duplicate keys are dropped when the partition is indexed
+                    spilled[partition].add(key, row(rs, width));
+                } else if (!partitions.get(partition).containsKey(key)) {
+                    Object[] row = row(rs, width);
+                    long bytes = estimate(key, row);
+                    // The rest of the budget may be held by other tables, so spill until the row fits
+                    while (spilled[partition] == null && !budget.reserve(bytes)) {
+                        spillLargest();
+                    }
+                    if (spilled[partition] != null) {
+                        spilled[partition].add(key, row);
+                    } else {
+                        partitions.get(partition).put(key, row);
+                        partitionBytes[partition] += bytes;
+                        memoryUsed += bytes;
+                    }
+                }
+            }
+            for (int i = 0; i < spilled.length; i++) {
+                if (spilled[i] != null) {
+                    spilled[i].finish();
+                    size += spilled[i].size();
+                } else {
+                    size += partitions.get(i).size();
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw new SQLException("Failed to spill the lookup table to disk: " + e.getMessage(), e);
+        } catch (ClassNotFoundException | SQLException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private static Object[] row(ResultSet rs, int width) throws SQLException {
+        Object[] row = new Object[width];
+        for (int i = 0; i < width; i++) {
+            row[i] = rs.getObject(i + 2);
+        }
+        return row;
+    }
+
+    /**
+     * Move the largest partition still in memory to disk, giving its share of the budget
+     * back; at least one partition must still be in memory
+     */
+    private void spillLargest() throws IOException {
+        int largest = -1;
+        for (int i = 0; i < spilled.length; i++) {
+            if (spilled[i] == null && (largest < 0 || partitionBytes[i] > partitionBytes[largest])) {
+                largest = i;
+            }
+        }
+        // Registered first, so close() deletes it if writing fails
+        SpillPartition spill = new SpillPartition(width);
+        spilled[largest] = spill;
+        for (Map.Entry<String, Object[]> entry : partitions.get(largest).entrySet()) {
+            spill.add(entry.getKey(), entry.getValue());
+        }
+        partitions.set(largest, null);
+        budget.release(partitionBytes[largest]);
+        memoryUsed -= partitionBytes[largest];
+        partitionBytes[largest] = 0;
+    }
+
+    /**
+     * @return The query reading the lookup side of a group: whereIdColumn, then the finalSelectColumns
+     */
+    static String sql(SqlDialect dialect, List<ExternalConnection> group) {
+        ExternalConnection first = group.get(0);
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(ExternalLookup.column(dialect, first.getWhereIdColumn()));
+        for (ExternalConnection mapping : group) {
+            sql.append(", ").append(ExternalLookup.column(dialect, mapping.getFinalSelectColumn()));
+        }
+        return sql.append(' ').append(ExternalLookup.fromClause(dialect, first)).toString();
+    }
+
+    /**
+     * @param id The value of the source id column
+     * @return The selected values for that id, or null if there are none
+     */
+    @Override
+    public Object[] lookup(Object id) throws SQLException {
+        String key = key(id);
+        if (key == null) {
+            return null;
+        }
+        int partition = partition(key);
+        SpillPartition spill = spilled[partition];
+        return spill != null ? spill.lookup(key) : partitions.get(partition).get(key);
+    }
+
+    /**
+     * Return the table's memory to the budget and delete its spilled partitions; the lookup
+     * must not be used afterwards
+     */
+    @Override
+    public synchronized void close() {
+        budget.release(memoryUsed);
+        memoryUsed = 0;
+        for (int i = 0; i < partitions.size(); i++) {
+            if (spilled[i] != null) {
+                spilled[i].close();
+                spilled[i] = null;
+            }
+            partitions.set(i, new HashMap<String, Object[]>());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return How many of the table's hash partitions were spilled to disk
+     */
+    public int getSpilledPartitions() {
+        int count = 0;
+        for (SpillPartition spill : spilled) {
+            if (spill != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int partition(String key) {
+        return (key.hashCode() * 0x9E3779B9) >>> (32 - PARTITION_BITS);
+    }
+
+    /**
+     * @return The approximate heap bytes of a key and its row, map entry included
+     */
+    private static long estimate(String key, Object[] row) {
+        long bytes = 48 + 40 + 2L * key.length() + 16 + 4L * row.length;
+        for (Object value : row) {
+            if (value instanceof String) {
+                bytes += 40 + 2L * ((String) value).length();
+            } else if (value instanceof byte[]) {
+                bytes += 16 + ((byte[]) value).length;
+            } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+                bytes += 64;
+            } else if (value != null) {
+                bytes += 24;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return The join key of an id value, or null for null, which never matches; numbers
+     *         of any type key by their plain decimal form, so 1, 1.0 and 1.00 match
+     */
+    static String key(Object id) {
+        if (id == null) {
+            return null;
+        }
+        if (id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte ||
+                id instanceof BigInteger) {
+            return id.toString();
+        }
+        BigDecimal value = null;
+        if (id instanceof BigDecimal) {
+            value = (BigDecimal) id;
+        } else if ((id instanceof Double && !((Double) id).isNaN() && !((Double) id).isInfinite())
+                || (id instanceof Float && !((Float) id).isNaN() && !((Float) id).isInfinite())) {
+            // From the shortest decimal form, so a float 0.1 stays 0.1
+            value = new BigDecimal(id.toString());
+        }
+        if (value != null) {
+            return value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString();
+        }
+        return id.toString();
+    }
+}
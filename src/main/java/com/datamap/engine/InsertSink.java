@@ -0,0 +1,214 @@
+package com.datamap.engine;
+
+import com.datamap.model.ColumnMetadata;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Writes rows with a prepared INSERT statement, sent to the target in JDBC batches.
+ * <p>
+ * With the batch rewriting ConnectionPool enables (rewriteBatchedStatements for MySQL,
+ * reWriteBatchedInserts for PostgreSQL), each batch travels as a few multi-row INSERTs
+ * instead of one round trip per row. Rows are committed every commitInterval rows, or
+ * once in {@link #finish()} when the interval is 0.
+ */
+public class InsertSink implements RowSink {
+    private final Connection conn;
+    private final PreparedStatement insert;
+    private final ColumnMetadata[] types;
+    private final int batchSize;
+    private final int commitInterval;
+    private int pending; // Rows added to the current batch
+    private long uncommitted; // Rows executed since the last commit
+    private long written;
+
+    /**
+     * @param conn The target connection; auto-commit is switched off for the duration of the load
+     * @param dialect The target dialect
+     * @param table The target table
+     * @param columns The target columns, in row order
+     * @param types The metadata of each column, or null entries where it is not known
+     * @param batchSize Rows per executeBatch call
+     * @param commitInterval Rows per commit; 0 commits only in {@link #finish()}
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public InsertSink(Connection conn, SqlDialect dialect, String table, List<String> columns,
+                      ColumnMetadata[] types, int batchSize, int commitInterval) throws SQLException {
+        this(conn, insertSql(dialect, table, columns), types, batchSize, commitInterval);
+    }
+
+    /**
+     * @param conn The target connection; auto-commit is switched off for the duration of the load
+     * @param sql An INSERT (or upsert) with one parameter per column, in row order
+     * @param types The metadata of each column, or null entries where it is not known
+     * @param batchSize Rows per executeBatch call
+     * @param commitInterval Rows per commit; 0 commits only in {@link #finish()}
+     * @throws SQLException If the statement cannot be prepared
+     */
+    public InsertSink(Connection conn, String sql, ColumnMetadata[] types, int batchSize, int commitInterval)
+            throws SQLException {
+        this.conn = conn;
+        this.types = types;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitInterval = commitInterval;
+        conn.setAutoCommit(false);
+        this.insert = conn.prepareStatement(sql);
+    }
+
+    static String insertSql(SqlDialect dialect, String table, List<String> columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(dialect.quote(table)).append(" (");
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            sql.append(dialect.quote(columns.get(i)));
+            values.append('?');
+        }
+        return sql.append(") VALUES (").append(values).append(')').toString();
+    }
+
+    /**
+     * Build an INSERT that updates the existing row when one with the same key is present:
+     * ON CONFLICT ... DO UPDATE for PostgreSQL, ON DUPLICATE KEY UPDATE for MySQL. Every
+     * non-key column is overwritten with the new value.
+     * <p>
+     * PostgreSQL rejects a statement that touches one key twice, and batch rewriting turns a
+     * batch into few statements, so the rows of a load must be unique on the key.
+     *
+     * @param keys The target's primary key columns; all of them must be among the columns
+     * @throws IllegalArgumentException If the dialect has no upsert or the key is not mapped
+     */
+    static String upsertSql(SqlDialect dialect, String table, List<String> columns, List<String> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("Upsert needs the primary key of " + table +
+                    "; add its key columns so their metadata is known");
+        }
+        if (!columns.containsAll(keys)) {
+            throw new IllegalArgumentException("Upsert into " + table + " needs every key column " + keys + " mapped");
+        }
+        StringBuilder sql = new StringBuilder(insertSql(dialect, table, columns));
+        StringBuilder updates = new StringBuilder();
+        for (String column : columns) {
+            if (keys.contains(column)) {
+                continue;
+            }
+            if (updates.length() > 0) {
+                updates.append(", ");
+            }
+            String quoted = dialect.quote(column);
+            updates.append(quoted).append(" = ")
+                    .append(dialect.isMysql() ? "VALUES(" + quoted + ")" : "EXCLUDED." + quoted);
+        }
+
+        if (dialect.isPostgres()) {
+            sql.append(" ON CONFLICT (");
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(dialect.quote(keys.get(i)));
+            }
+            sql.append(')');
+            sql.append(updates.length() > 0 ? " DO UPDATE SET " + updates : " DO NOTHING");
+        } else if (dialect.isMysql()) {
+            // With only key columns there is nothing to update; a no-op assignment keeps the row
+            String quotedKey = dialect.quote(keys.get(0));
+            sql.append(" ON DUPLICATE KEY UPDATE ")
+                    .append(updates.length() > 0 ? updates : quotedKey + " = " + quotedKey);
+        } else {
+            throw new IllegalArgumentException("Upsert is only supported for PostgreSQL and MySQL targets");
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public void write(Object[] row) throws SQLException {
+        // Values are copied into the batch here, so the caller may reuse the row array
+        bind(insert, row, types);
+        add();
+    }
+
+    /**
+     * Integral and double columns are bound with setLong and setDouble, without boxing
+     */
+    @Override
+    public void write(ColumnBatch batch, int row) throws SQLException {
+        for (int i = 0; i < batch.width(); i++) {
+            ColumnBatch.Vector column = batch.column(i);
+            if (column.isNull(row)) {
+                bind(insert, i, null, types[i]);
+            } else if (column.kind == ColumnBatch.Kind.LONG) {
+                insert.setLong(i + 1, column.getLong(row));
+            } else if (column.kind == ColumnBatch.Kind.DOUBLE) {
+                insert.setDouble(i + 1, column.getDouble(row));
+            } else {
+                bind(insert, i, column.get(row), types[i]);
+            }
+        }
+        add();
+    }
+
+    private void add() throws SQLException {
+        insert.addBatch();
+        if (++pending >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public long finish() throws SQLException {
+        flush();
+        conn.commit();
+        uncommitted = 0;
+        return written;
+    }
+
+    /**
+     * Execute the current batch, and commit if the commit interval has been reached
+     */
+    private void flush() throws SQLException {
+        if (pending == 0) {
+            return;
+        }
+        // Rewritten batches report SUCCESS_NO_INFO instead of counts, so count the rows sent
+        insert.executeBatch();
+        written += pending;
+        uncommitted += pending;
+        pending = 0;
+        if (commitInterval > 0 && uncommitted >= commitInterval) {
+            conn.commit();
+            uncommitted = 0;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        insert.close();
+    }
+
+    /**
+     * Bind a row to the parameters of a statement. Where the column type is known, values
+     * are converted by the driver, so e.g. a constant "42" can fill an integer column.
+     */
+    static void bind(PreparedStatement ps, Object[] row, ColumnMetadata[] types) throws SQLException {
+        for (int i = 0; i < row.length; i++) {
+            bind(ps, i, row[i], types[i]);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, int i, Object value, ColumnMetadata type) throws SQLException {
+        if (value == null) {
+            ps.setNull(i + 1, type == null ? Types.NULL : type.getJdbcType());
+        } else if (type != null && value instanceof String && type.getJdbcType() != Types.OTHER) {
+            ps.setObject(i + 1, value, type.getJdbcType());
+        } else {
+            ps.setObject(i + 1, value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.datamap.engine;
+
+import com.datamap.model.SourceColumn;
+import com.datamap.model.mapping.ExternalConnection;
+import com.datamap.model.mapping.LeftJoin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The tables an {@link ExternalConnection} reaches from its whereSelectTable, in join
+ * order. Each LEFT JOIN adds whichever of its two tables is not yet part of the path.
+ */
+class JoinPath {
+
+    /**
+     * One LEFT JOIN: the table it adds, the column of that table it joins on, and the
+     * column of an earlier table it is joined to
+     */
+    static class Step {
+        final String table;
+        final SourceColumn joinColumn;
+        final SourceColumn joinedTo;
+
+        Step(String table, SourceColumn joinColumn, SourceColumn joinedTo) {
+            this.table = table;
+            this.joinColumn = joinColumn;
+            this.joinedTo = joinedTo;
+        }
+    }
+
+    private final String whereTable;
+    private final List<Step> steps;
+
+    private JoinPath(String whereTable, List<Step> steps) {
+        this.whereTable = whereTable;
+        this.steps = steps;
+    }
+
+    /**
+     * @throws IllegalArgumentException If a join is not connected to the tables before it,
+     *                                  or the final select table is never joined
+     */
+    static JoinPath of(ExternalConnection mapping) {
+        String whereTable = mapping.getWhereSelectTable().getTable().getName();
+        Set<String> joined = new LinkedHashSet<>();
+        joined.add(whereTable);
+
+        List<Step> steps = new ArrayList<>();
+        for (LeftJoin join : mapping.getJoins()) {
+            String left = join.getLeftColumn().getTable().getName();
+            String right = join.getRightColumn().getTable().getName();
+            if (joined.contains(left) && !joined.contains(right)) {
+                steps.add(new Step(right, join.getRightColumn(), join.getLeftColumn()));
+                joined.add(right);
+            } else if (joined.contains(right) && !joined.contains(left)) {
+                steps.add(new Step(left, join.getLeftColumn(), join.getRightColumn()));
+                joined.add(left);
+            } else {
+                throw new IllegalArgumentException("LEFT JOIN " + join + " does not connect a new table to " + joined);
+            }
+        }
+
+        String finalTable = mapping.getFinalSelectColumn().getTable().getName();
+        if (!joined.contains(finalTable)) {
+            throw new IllegalArgumentException("Table " + finalTable + " of " + mapping.getFinalSelectColumn() +
+                    " is not reachable from " + whereTable + " through the LEFT JOINs");
+        }
+        return new JoinPath(whereTable, Collections.unmodifiableList(steps));
+    }
+
+    String getWhereTable() {
+        return whereTable;
+    }
+
+    List<Step> getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,252 @@
+package com.datamap.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A slice of a source table on one column: lower bound inclusive, upper bound exclusive,
+ * either bound null for "unbounded". The first slice of a split also takes the rows whose
+ * key is NULL, so the slices of a table always cover every row exactly once.
+ */
+class KeyRange {
+    private final String column;
+    private final Object lower;
+    private final boolean lowerInclusive;
+    private final Object upper;
+    private final boolean includesNull;
+    private final boolean nullsOnly;
+
+    KeyRange(String column, Object lower, Object upper, boolean includesNull) {
+        this(column, lower, true, upper, includesNull, false);
+    }
+
+    private KeyRange(String column, Object lower, boolean lowerInclusive, Object upper, boolean includesNull,
+                     boolean nullsOnly) {
+        this.column = column;
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.includesNull = includesNull;
+        this.nullsOnly = nullsOnly;
+    }
+
+    /**
+     * @return The range of the rows whose key is NULL
+     */
+    static KeyRange nulls(String column) {
+        return new KeyRange(column, null, true, null, true, true);
+    }
+
+    /**
+     * @return This range without its NULL keys
+     */
+    KeyRange withoutNulls() {
+        return new KeyRange(column, lower, lowerInclusive, upper, false, false);
+    }
+
+    /**
+     * @param key A key of this range that has been dealt with, along with all keys below it
+     * @return The rest of this range: the keys above the given one
+     */
+    KeyRange after(Object key) {
+        return new KeyRange(column, key, false, upper, false, false);
+    }
+
+    boolean isNullsOnly() {
+        return nullsOnly;
+    }
+
+    /**
+     * @return The range covering the whole table
+     */
+    static KeyRange all() {
+        return new KeyRange(null, null, null, true);
+    }
+
+    boolean isAll() {
+        return column == null || !nullsOnly && lower == null && upper == null && includesNull;
+    }
+
+    String getColumn() {
+        return column;
+    }
+
+    Object getLower() {
+        return lower;
+    }
+
+    boolean isLowerInclusive() {
+        return lowerInclusive;
+    }
+
+    Object getUpper() {
+        return upper;
+    }
+
+    boolean isIncludesNull() {
+        return includesNull;
+    }
+
+    /**
+     * @param dialect The source dialect
+     * @return The condition selecting the range on the driving table, with ? placeholders
+     * for {@link #parameters()}, or null for the whole table
+     */
+    String condition(SqlDialect dialect) {
+        if (isAll()) {
+            return null;
+        }
+        String key = SourceQuery.DRIVING_ALIAS + "." + dialect.quote(column);
+        if (nullsOnly) {
+            return key + " IS NULL";
+        }
+        List<String> bounds = new ArrayList<>();
+        if (lower != null) {
+            bounds.add(key + (lowerInclusive ? " >= ?" : " > ?"));
+        }
+        if (upper != null) {
+            bounds.add(key + " < ?");
+        }
+        String range = bounds.isEmpty() ? null : join(bounds);
+        if (!includesNull) {
+            return range != null ? range : key + " IS NOT NULL";
+        }
+        return range != null ? "(" + range + " OR " + key + " IS NULL)" : null;
+    }
+
+    Object[] parameters() {
+        List<Object> values = new ArrayList<>();
+        if (!isAll() && !nullsOnly) {
+            if (lower != null) {
+                values.add(lower);
+            }
+            if (upper != null) {
+                values.add(upper);
+            }
+        }
+        return values.toArray();
+    }
+
+    @Override
+    public String toString() {
+        if (isAll()) {
+            return "all rows";
+        }
+        if (nullsOnly) {
+            return column + " is null";
+        }
+        return column + " in " + (lowerInclusive ? "[" : "(") + (lower != null ? lower : "-inf") + ", " +
+                (upper != null ? upper : "+inf") + ")" + (includesNull ? " or null" : "");
+    }
+
+    /**
+     * Split a table into at most count ranges of equal key width, from the MIN and MAX of
+     * the column. Only integral and date/time columns can be split; the outermost ranges
+     * are left unbounded so rows beyond the sampled MIN and MAX are still read.
+     *
+     * @param conn A connection to the table's data source
+     * @param dialect Its dialect
+     * @param table The source table
+     * @param column The partition column
+     * @param count The wanted number of ranges
+     * @return The ranges, in key order; a single {@link #all()} range if the table is empty
+     * @throws SQLException If MIN/MAX cannot be read
+     * @throws IllegalArgumentException If the column is not integral or date/time
+     */
+    static List<KeyRange> split(Connection conn, SqlDialect dialect, String table, String column, int count)
+            throws SQLException {
+        if (count <= 1) {
+            return Collections.singletonList(all());
+        }
+        Object min;
+        Object max;
+        String quoted = dialect.quote(column);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(" + quoted + "), MAX(" + quoted + ") FROM " +
+                     dialect.quote(table))) {
+            rs.next();
+            min = sqlValue(rs.getObject(1));
+            max = sqlValue(rs.getObject(2));
+        }
+        if (min == null || max == null) {
+            return Collections.singletonList(all());
+        }
+
+        boolean temporal = min instanceof Date;
+        long low = toLong(min, column);
+        long high = toLong(max, column);
+        // Ranges of at least one key, so a narrow key space yields fewer ranges
+        long span = high - low;
+        if (span < 0) {
+            // Overflow: keys span more than Long.MAX_VALUE
+            span = Long.MAX_VALUE;
+        }
+        long width = Math.max(1, span / count + 1);
+
+        List<KeyRange> ranges = new ArrayList<>();
+        Object lower = null;
+        for (long bound = low + width; bound <= high && bound > low; bound += width) {
+            Object upper = temporal ? new Timestamp(bound) : (Object) bound;
+            ranges.add(new KeyRange(column, lower, upper, ranges.isEmpty()));
+            lower = upper;
+        }
+        ranges.add(new KeyRange(column, lower, null, ranges.isEmpty()));
+        return ranges;
+    }
+
+    /**
+     * @return A java.time value as the java.sql type it stands for (MySQL Connector/J 8
+     * returns DATETIME as LocalDateTime), anything else unchanged
+     */
+    private static Object sqlValue(Object value) {
+        if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime) value);
+        } else if (value instanceof LocalDate) {
+            return java.sql.Date.valueOf((LocalDate) value);
+        } else if (value instanceof OffsetDateTime) {
+            return Timestamp.from(((OffsetDateTime) value).toInstant());
+        }
+        return value;
+    }
+
+    private static long toLong(Object value, String column) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigInteger) {
+            return ((BigInteger) value).longValueExact();
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).setScale(0, RoundingMode.FLOOR).longValueExact();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        throw new IllegalArgumentException("Cannot split on column " + column + " of type " +
+                value.getClass().getSimpleName() + "; choose an integral or date/time column");
+    }
+
+    private static String join(List<String> parts) {
+        StringBuilder text = new StringBuilder();
+        for (String part : parts) {
+            if (text.length() > 0) {
+                text.append(" AND ");
+            }
+            text.append(part);
+        }
+        return text.toString();
+    }
+}
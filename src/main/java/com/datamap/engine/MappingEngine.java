@@ -0,0 +1,1027 @@
+package com.datamap.engine;
+
+import com.datamap.model.ColumnMetadata;
+import com.datamap.model.DataSource;
+import com.datamap.model.SourceColumn;
+import com.datamap.model.SourceTable;
+import com.datamap.model.Table;
+import com.datamap.model.TargetTable;
+import com.datamap.model.mapping.*;
+import com.datamap.util.ConnectionPool;
+import com.datamap.util.DatabaseConnectionManager;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a {@link MappingModel} directly, JDBC to JDBC, instead of generating code for it.
+ * <p>
+ * Each target table is filled from its driving source table (the one it was based on in
+ * the wizard): every source row becomes one target row, with each mapped target column
+ * computed by its mapping. Target tables are loaded one after another, each in its own
+ * transaction; a failing table is rolled back and reported, the others still run. With a
+ * commit interval set (see {@link EngineOptions#setCommitInterval(int)}) a failing table
+ * keeps the rows committed before the failure.
+ * <p>
+ * With {@link EngineOptions#setPartitions(int)} above 1, a source table is split into key
+ * ranges that are loaded concurrently, each range in its own transaction. With
+ * {@link EngineOptions#setResumable(boolean)} the ranges are checkpointed as they commit,
+ * and a rerun after a crash continues where the interrupted run stopped.
+ * <p>
+ * ExternalConnection lookups whose tables share the driving table's data source are
+ * pushed down into the source query (see {@link SourceQuery}); the others are resolved
+ * with a hash join against their own data source (see {@link HashLookup}), or queried
+ * row by row when hash joins are switched off.
+ */
+public class MappingEngine {
+    // Pools are shared by every engine in the process, and so is their budget
+    private static final PoolBudget POOL_BUDGET = new PoolBudget();
+
+    private final Map<String, DataSource> dataSources = new LinkedHashMap<>();
+    private final EngineOptions options;
+    private final DictCache dictCache;
+    // Shared by the hash join tables of every table the engine loads
+    private final MemoryBudget lookupMemory;
+    private final WatermarkStore watermarks;
+    private final CheckpointStore checkpoints;
+    private final List<RowPipeline> running = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param dataSources The configured data sources; tables refer to them by name
+     * @param options The run settings
+     */
+    public MappingEngine(List<DataSource> dataSources, EngineOptions options) {
+        this(dataSources, options, new WatermarkStore());
+    }
+
+    /**
+     * @param dataSources The configured data sources; tables refer to them by name
+     * @param options The run settings
+     * @param watermarks Where incremental loads keep their progress
+     */
+    public MappingEngine(List<DataSource> dataSources, EngineOptions options, WatermarkStore watermarks) {
+        this(dataSources, options, watermarks, new CheckpointStore());
+    }
+
+    /**
+     * @param dataSources The configured data sources; tables refer to them by name
+     * @param options The run settings
+     * @param watermarks Where incremental loads keep their progress
+     * @param checkpoints Where resumable loads keep their progress
+     */
+    public MappingEngine(List<DataSource> dataSources, EngineOptions options, WatermarkStore watermarks,
+                         CheckpointStore checkpoints) {
+        for (DataSource dataSource : dataSources) {
+            this.dataSources.put(dataSource.getName(), dataSource);
+        }
+        this.options = options;
+        this.dictCache = new DictCache(options);
+        this.lookupMemory = new MemoryBudget(options.getLookupMemoryBudget());
+        this.watermarks = watermarks;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * @return The queues of the pipelines running right now, two per table partition being
+     * loaded; depth and wait times show which stage holds the others up
+     */
+    public List<QueueStats> getRunningQueueStats() {
+        List<QueueStats> stats = new ArrayList<>();
+        for (RowPipeline pipeline : running) {
+            Collections.addAll(stats, pipeline.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * @return The dictionaries shared by the runs of this engine
+     */
+    public DictCache getDictCache() {
+        return dictCache;
+    }
+
+    /**
+     * Load every target table of the model
+     *
+     * @param model The tables and mappings to run
+     * @return Rows and timings per target table
+     */
+    public ExecutionReport run(MappingModel model) {
+        ExecutionReport report = new ExecutionReport();
+        long start = System.nanoTime();
+        dictCache.startRun();
+        for (TargetTable target : model.getTargetTables().values()) {
+            report.addTable(runTable(model, target));
+        }
+        report.setDictionaries(dictCache.getDictionaries());
+        report.setElapsedMillis((System.nanoTime() - start) / 1000000);
+        return report;
+    }
+
+    /**
+     * Estimate the cost of running a model with EXPLAIN, without running it: the source query
+     * of each target table (with its pushed-down lookups) and the query of every other
+     * lookup, as this engine's options would issue them. The only rows read are one sample
+     * id per per-row lookup, to explain its query with a realistic value.
+     *
+     * @param model The tables and mappings to estimate
+     * @return The estimates per target table; failures are recorded, not thrown
+     */
+    public CostPreview explain(MappingModel model) {
+        CostPreview preview = new CostPreview();
+        for (TargetTable target : model.getTargetTables().values()) {
+            preview.addTable(explainTable(model, target));
+        }
+        return preview;
+    }
+
+    private CostPreview.TableCost explainTable(MappingModel model, TargetTable target) {
+        CostPreview.TableCost cost = new CostPreview.TableCost(target.getName());
+        try {
+            TablePlan plan = compile(model, target);
+            String sql = plan.query.toSql();
+            try (Connection conn = DatabaseConnectionManager.getConnection(plan.sourceDS)) {
+                QueryExplainer.Estimate estimate = QueryExplainer.explain(conn, SqlDialect.of(plan.sourceDS), sql);
+                cost.setEstimate(sql, estimate.rows, estimate.cost, estimate.fullScans);
+                for (Map.Entry<String, List<ExternalConnection>> group : plan.lookupGroups.entrySet()) {
+                    cost.addLookup(explainLookup(plan, group.getValue(), plan.pushedGroups.contains(group.getKey()),
+                            conn, estimate.rows));
+                }
+            }
+        } catch (Exception e) {
+            cost.setError(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        return cost;
+    }
+
+    /**
+     * @param sourceConn A connection to the driving table's data source, for the sample id
+     * @param drivingRows The estimated rows of the source query, the number of per-row lookups
+     */
+    private CostPreview.LookupCost explainLookup(TablePlan plan, List<ExternalConnection> group, boolean pushed,
+                                                 Connection sourceConn, double drivingRows) {
+        StringBuilder columns = new StringBuilder();
+        for (ExternalConnection mapping : group) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(mapping.getTargetColumn().getName());
+        }
+        CostPreview.Strategy strategy = pushed ? CostPreview.Strategy.PUSHED_DOWN
+                : options.isHashJoinLookups() ? CostPreview.Strategy.HASH_JOIN : CostPreview.Strategy.PER_ROW;
+        CostPreview.LookupCost lookup = new CostPreview.LookupCost(plan.target.getName(), columns.toString(), strategy);
+        if (pushed) {
+            return lookup;
+        }
+        ExternalConnection first = group.get(0);
+        try {
+            DataSource lookupDS = dataSource(sourceTable(plan.model, first.getWhereIdColumn()).getDataSourceName());
+            SqlDialect dialect = SqlDialect.of(lookupDS);
+            try (Connection conn = DatabaseConnectionManager.getConnection(lookupDS)) {
+                if (strategy == CostPreview.Strategy.HASH_JOIN) {
+                    String sql = HashLookup.sql(dialect, group);
+                    QueryExplainer.Estimate estimate = QueryExplainer.explain(conn, dialect, sql);
+                    lookup.setEstimate(sql, estimate.rows, estimate.cost, estimate.cost, estimate.fullScans);
+                } else {
+                    String sql = ExternalLookup.sql(dialect, group);
+                    Object sample = sampleId(sourceConn, plan, first.getSourceIdColumn().getName());
+                    QueryExplainer.Estimate estimate = QueryExplainer.explain(conn, dialect, sql, sample);
+                    lookup.setEstimate(sql, estimate.rows, estimate.cost, estimate.cost * drivingRows,
+                            estimate.fullScans);
+                }
+            }
+        } catch (Exception e) {
+            lookup.setError(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        return lookup;
+    }
+
+    /**
+     * @return A non-null value of a driving table column, or null if it has none
+     */
+    private static Object sampleId(Connection conn, TablePlan plan, String column) throws SQLException {
+        SqlDialect dialect = SqlDialect.of(plan.sourceDS);
+        String quoted = dialect.quote(column);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + quoted + " FROM " +
+                     dialect.quote(plan.target.getSourceTable().getName()) + " WHERE " + quoted +
+                     " IS NOT NULL LIMIT 1")) {
+            return rs.next() ? rs.getObject(1) : null;
+        }
+    }
+
+    /**
+     * Load one target table
+     *
+     * @param model The model the table belongs to
+     * @param target The target table
+     * @return Rows and timing of the table; failures are recorded, not thrown
+     */
+    public ExecutionReport.TableResult runTable(MappingModel model, TargetTable target) {
+        return runTable(model, target, 1);
+    }
+
+    /**
+     * Load one target table while other tables run
+     *
+     * @param model The model the table belongs to
+     * @param target The target table
+     * @param tablesPerPool Tables that may use a connection pool at the same time; the table
+     *                      sizes its partition workers to its share of each pool
+     * @return Rows and timing of the table; failures are recorded, not thrown
+     */
+    public ExecutionReport.TableResult runTable(MappingModel model, TargetTable target, int tablesPerPool) {
+        ExecutionReport.TableResult result = new ExecutionReport.TableResult(target.getName());
+        long start = System.nanoTime();
+        try {
+            load(model, target, tablesPerPool, result);
+        } catch (Exception e) {
+            result.setError(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        result.setElapsedMillis((System.nanoTime() - start) / 1000000);
+        return result;
+    }
+
+    private void load(MappingModel model, TargetTable target, int tablesPerPool, ExecutionReport.TableResult result)
+            throws ClassNotFoundException, SQLException {
+        TablePlan plan = compile(model, target);
+        plan.tablesPerPool = Math.max(1, tablesPerPool);
+        try {
+            load(plan, result);
+        } finally {
+            // Hand the table's share of the lookup memory to the tables still running
+            for (GroupLookup lookup : plan.sharedLookups.values()) {
+                if (lookup instanceof HashLookup) {
+                    ((HashLookup) lookup).close();
+                }
+            }
+        }
+    }
+
+    private void load(TablePlan plan, ExecutionReport.TableResult result) throws ClassNotFoundException, SQLException {
+        SourceTable driving = plan.target.getSourceTable();
+
+        // Hash join tables are read-only once built, so all partitions share them
+        for (Map.Entry<String, List<ExternalConnection>> group : plan.lookupGroups.entrySet()) {
+            if (!plan.pushedGroups.contains(group.getKey()) && options.isHashJoinLookups()) {
+                ExternalConnection first = group.getValue().get(0);
+                DataSource lookupDS = dataSource(sourceTable(plan.model, first.getWhereIdColumn()).getDataSourceName());
+                plan.sharedLookups.put(group.getKey(), new HashLookup(lookupDS, group.getValue(), lookupMemory));
+            }
+        }
+        // Dictionaries too: a cold one borrows a connection, which must not wait for the
+        // connections the partitions hold
+        for (int i = 0; i < plan.mappings.size(); i++) {
+            Mapping mapping = plan.mappings.get(i);
+            if (mapping instanceof Dict && !plan.pushedDown[i]) {
+                Dict dict = (Dict) mapping;
+                String dsName = options.getDictDataSourceName() != null ? options.getDictDataSourceName()
+                        : sourceTable(plan.model, dict.getSourceColumn()).getDataSourceName();
+                // Shared by every Dict mapping of the same type, and across tables
+                plan.dictionaries.put(i, dictCache.get(dataSource(dsName), dict.getDictType()));
+            }
+        }
+
+        String watermarkColumn = options.getWatermarkColumn(driving.getName());
+        String loadKey = WatermarkStore.key(plan.sourceDS.getName(), driving.getName(), plan.target.getName());
+        Object watermark = null;
+        if (options.isResumable()) {
+            watermark = loadResumable(plan, watermarkColumn, loadKey, result);
+        } else {
+            if (watermarkColumn != null) {
+                watermark = watermarkWindow(plan, watermarkColumn, loadKey, null, result);
+            }
+            List<KeyRange> ranges = partition(plan, partitionColumn(plan));
+            result.setPartitions(ranges.size());
+            if (ranges.size() == 1) {
+                long[] counts = loadRange(plan, ranges.get(0), options.isTruncateTarget(), new AtomicBoolean(), null,
+                        result);
+                result.setRowsRead(counts[0]);
+                result.setRowsWritten(counts[1]);
+            } else {
+                loadPartitions(plan, ranges, null, options.isTruncateTarget(), result);
+            }
+        }
+
+        if (watermark != null) {
+            // Only a completely loaded window moves the watermark on
+            try {
+                watermarks.put(loadKey, watermarkColumn, watermark);
+            } catch (IOException e) {
+                throw new SQLException("Loaded, but failed to save the watermark of " + plan.target.getName() +
+                        ": " + e.getMessage(), e);
+            }
+        }
+        if (options.isResumable()) {
+            checkpoints.delete(loadKey);
+        }
+    }
+
+    /**
+     * Check the mappings of a target table and build its source query, pushing down the
+     * lookups that can be
+     */
+    private TablePlan compile(MappingModel model, TargetTable target) {
+        List<Mapping> mappings = model.getMappingsFor(target.getName());
+        if (mappings.isEmpty()) {
+            throw new IllegalArgumentException("No mappings for target table " + target.getName());
+        }
+
+        SourceTable driving = target.getSourceTable();
+        DataSource sourceDS = dataSource(driving.getDataSourceName());
+        DataSource targetDS = dataSource(target.getDataSourceName());
+
+        // Source columns to select, in first-use order, and lookups resolved by the query itself
+        SourceQuery query = new SourceQuery(SqlDialect.of(sourceDS), driving.getName());
+        int[] inputs = new int[mappings.size()];
+        boolean[] pushedDown = new boolean[mappings.size()];
+        // ExternalConnections differing only in finalSelectColumn share one lookup
+        Map<String, List<ExternalConnection>> lookupGroups = lookupGroups(mappings);
+        Map<String, int[]> pushedGroups = new HashMap<>();
+        List<String> targetColumns = new ArrayList<>();
+        for (int m = 0; m < mappings.size(); m++) {
+            Mapping mapping = mappings.get(m);
+            String column = mapping.getTargetColumn().getName();
+            if (targetColumns.contains(column)) {
+                throw new IllegalArgumentException("Target column " + mapping.getTargetColumn() + " is mapped twice");
+            }
+            targetColumns.add(column);
+            SourceColumn input = drivingInput(mapping);
+            if (input != null) {
+                if (!input.getTable().getName().equals(driving.getName())) {
+                    throw new IllegalArgumentException(input + " is not a column of " + driving.getName() +
+                            ", the source table of " + target.getName());
+                }
+                List<ExternalConnection> group = mapping instanceof ExternalConnection
+                        ? lookupGroups.get(((ExternalConnection) mapping).getJoinSignature()) : null;
+                if (group != null && canPushDown(model, group, sourceDS)) {
+                    String signature = ((ExternalConnection) mapping).getJoinSignature();
+                    int[] indexes = pushedGroups.get(signature);
+                    if (indexes == null) {
+                        indexes = query.pushDown(group, isUniquePath(model, group.get(0)));
+                        pushedGroups.put(signature, indexes);
+                    }
+                    inputs[m] = indexes[group.indexOf(mapping)];
+                    pushedDown[m] = true;
+                } else {
+                    inputs[m] = query.column(input.getName());
+                }
+            }
+        }
+
+        TablePlan plan = new TablePlan(model, target, mappings, sourceDS, targetDS, query, targetColumns);
+        plan.inputs = inputs;
+        plan.pushedDown = pushedDown;
+        plan.lookupGroups = lookupGroups;
+        plan.types = new ColumnMetadata[targetColumns.size()];
+        for (int i = 0; i < plan.types.length; i++) {
+            plan.types[i] = target.getTable().getColumnMetadata(targetColumns.get(i));
+        }
+        plan.pushedGroups = pushedGroups.keySet();
+        return plan;
+    }
+
+    /**
+     * Load a table in checkpointed chunks: the key ranges of a partitioned load, without
+     * their NULL keys, plus one chunk for the NULL keys. Each chunk is read in key order and
+     * commits every checkpoint interval, recording its last key. With the checkpoint of an
+     * interrupted run, only the unfinished chunks run, each from after its last committed
+     * key, with the watermark window of the interrupted run; the target is not truncated.
+     *
+     * @return The watermark to store once every chunk is complete, or null
+     */
+    private Object loadResumable(TablePlan plan, String watermarkColumn, String key,
+                                 ExecutionReport.TableResult result) throws ClassNotFoundException, SQLException {
+        String column = partitionColumn(plan);
+        if (column == null) {
+            throw new IllegalArgumentException("A resumable load of " + plan.target.getName() +
+                    " needs a partition column or a single-column integral or date/time primary key");
+        }
+        CheckpointStore.Checkpoint checkpoint;
+        try {
+            checkpoint = checkpoints.load(key);
+        } catch (IOException e) {
+            throw new SQLException("Cannot read the checkpoint of " + plan.target.getName() + ": " + e.getMessage(), e);
+        }
+        if (checkpoint != null && !column.equals(checkpoint.getKeyColumn())) {
+            throw new IllegalArgumentException("The interrupted load of " + plan.target.getName() +
+                    " was checkpointed on column " + checkpoint.getKeyColumn() + ", not " + column +
+                    "; finish it with the same partition column or delete its checkpoint");
+        }
+
+        Object watermark = null;
+        if (watermarkColumn != null) {
+            watermark = watermarkWindow(plan, watermarkColumn, key, checkpoint, result);
+        }
+        if (checkpoint == null) {
+            checkpoint = new CheckpointStore.Checkpoint();
+            checkpoint.setKeyColumn(column);
+            checkpoint.setWatermark(watermark);
+            checkpoint.setCreatedAt(System.currentTimeMillis());
+            for (KeyRange range : partition(plan, column)) {
+                checkpoint.getChunks().add(new CheckpointStore.Chunk(range.isAll()
+                        ? new KeyRange(column, null, null, false) : range.withoutNulls()));
+            }
+            checkpoint.getChunks().add(new CheckpointStore.Chunk(KeyRange.nulls(column)));
+            if (options.isTruncateTarget()) {
+                truncate(plan);
+            }
+            try {
+                checkpoints.save(key, checkpoint);
+            } catch (IOException e) {
+                throw new SQLException("Cannot save the checkpoint of " + plan.target.getName() + ": " + e.getMessage(), e);
+            }
+        } else {
+            result.setResumed(true);
+        }
+
+        plan.orderBy = column;
+        int keyIndex = plan.query.column(column);
+        List<KeyRange> ranges = new ArrayList<>();
+        List<ChunkProgress> progress = new ArrayList<>();
+        for (int i = 0; i < checkpoint.getChunks().size(); i++) {
+            CheckpointStore.Chunk chunk = checkpoint.getChunks().get(i);
+            if (!chunk.isDone()) {
+                ranges.add(chunk.remaining(column));
+                // The NULL keys cannot be ordered, so their chunk commits once
+                progress.add(new ChunkProgress(checkpoints, key, checkpoint, i, keyIndex,
+                        chunk.isNullsOnly() ? 0 : options.getCheckpointInterval()));
+            }
+        }
+        result.setPartitions(ranges.size());
+        if (!ranges.isEmpty()) {
+            loadPartitions(plan, ranges, progress, false, result);
+        }
+        return watermark;
+    }
+
+    /**
+     * Restrict an incremental load to the rows above the stored watermark, up to the current
+     * maximum of the watermark column. Capping the window keeps rows that arrive during the
+     * run for the next one. A truncating run reloads everything up to the maximum.
+     *
+     * @param resumed The checkpoint of an interrupted load, whose window is reused, or null
+     * @return The new watermark to store once the load succeeds, or null if the table is empty
+     */
+    private Object watermarkWindow(TablePlan plan, String column, String key, CheckpointStore.Checkpoint resumed,
+                                   ExecutionReport.TableResult result) throws ClassNotFoundException, SQLException {
+        Object from;
+        try {
+            from = options.isTruncateTarget() ? null : watermarks.get(key, column);
+        } catch (IOException e) {
+            throw new SQLException("Cannot read the watermark of " + plan.target.getName() + ": " + e.getMessage(), e);
+        }
+        SqlDialect dialect = SqlDialect.of(plan.sourceDS);
+        Object to;
+        if (resumed != null) {
+            to = resumed.getWatermark();
+        } else {
+            try (Connection conn = DatabaseConnectionManager.getConnection(plan.sourceDS);
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(" + dialect.quote(column) + ") FROM " +
+                         dialect.quote(plan.target.getSourceTable().getName()))) {
+                rs.next();
+                to = rs.getObject(1);
+            }
+        }
+
+        String quoted = SourceQuery.DRIVING_ALIAS + "." + dialect.quote(column);
+        List<String> conditions = new ArrayList<>();
+        if (from != null) {
+            conditions.add(quoted + " > ?");
+            plan.parameters.add(from);
+        }
+        if (to != null) {
+            conditions.add(quoted + " <= ?");
+            plan.parameters.add(to);
+        } else {
+            conditions.add("1 = 0");
+        }
+        plan.condition = join(conditions);
+        result.setWatermark(from, to);
+        return to;
+    }
+
+    private static String join(List<String> conditions) {
+        StringBuilder text = new StringBuilder();
+        for (String condition : conditions) {
+            if (text.length() > 0) {
+                text.append(" AND ");
+            }
+            text.append(condition);
+        }
+        return text.toString();
+    }
+
+    /**
+     * The compiled form of one target table, shared by the partitions loading it
+     */
+    private static class TablePlan {
+        final MappingModel model;
+        final TargetTable target;
+        final List<Mapping> mappings;
+        final DataSource sourceDS;
+        final DataSource targetDS;
+        final SourceQuery query;
+        final List<String> targetColumns;
+        int[] inputs;
+        boolean[] pushedDown;
+        ColumnMetadata[] types;
+        Map<String, List<ExternalConnection>> lookupGroups;
+        // Signatures of the lookup groups resolved by the source query
+        Set<String> pushedGroups;
+        final Map<String, GroupLookup> sharedLookups = new HashMap<>();
+        // Dictionary of each Dict mapping, by mapping index
+        final Map<Integer, DictCache.Dictionary> dictionaries = new HashMap<>();
+        // Restriction of an incremental load on top of the key ranges, or null
+        String condition;
+        final List<Object> parameters = new ArrayList<>();
+        // Column of the driving table the rows are read in order of, or null
+        String orderBy;
+        // Tables that may share each connection pool with this one
+        int tablesPerPool = 1;
+
+        TablePlan(MappingModel model, TargetTable target, List<Mapping> mappings, DataSource sourceDS,
+                  DataSource targetDS, SourceQuery query, List<String> targetColumns) {
+            this.model = model;
+            this.target = target;
+            this.mappings = mappings;
+            this.sourceDS = sourceDS;
+            this.targetDS = targetDS;
+            this.query = query;
+            this.targetColumns = targetColumns;
+        }
+    }
+
+    /**
+     * @return The configured partition column of the driving table, or else its single-column
+     * integral or date/time primary key, or null
+     */
+    private String partitionColumn(TablePlan plan) {
+        SourceTable driving = plan.target.getSourceTable();
+        String column = options.getPartitionColumn(driving.getName());
+        if (column == null) {
+            List<String> primaryKey = driving.getTable().getPrimaryKeyColumns();
+            if (primaryKey.size() == 1 && isSplittable(driving.getTable().getColumnMetadata(primaryKey.get(0)))) {
+                column = primaryKey.get(0);
+            }
+        }
+        return column;
+    }
+
+    /**
+     * Split the driving table into key ranges on a partition column. Without one, or with
+     * one partition configured, the table is read as a whole.
+     */
+    private List<KeyRange> partition(TablePlan plan, String column) throws ClassNotFoundException, SQLException {
+        SourceTable driving = plan.target.getSourceTable();
+        if (options.getPartitions() <= 1 || column == null) {
+            return Collections.singletonList(KeyRange.all());
+        }
+        try (Connection conn = DatabaseConnectionManager.getConnection(plan.sourceDS)) {
+            return KeyRange.split(conn, SqlDialect.of(plan.sourceDS), driving.getName(), column,
+                    options.getPartitions());
+        }
+    }
+
+    private static boolean isSplittable(ColumnMetadata metadata) {
+        if (metadata == null) {
+            return false;
+        }
+        switch (metadata.getJdbcType()) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return true;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return metadata.getScale() == 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Load the ranges of a table concurrently. Each partition reads, maps and writes on its
+     * own pair of connections and commits on its own, so a failed partition leaves the ones
+     * that finished committed; the first failure stops the partitions still running.
+     *
+     * @param progress The checkpoint progress of each range, or null
+     * @param truncate Empty the target first, in a transaction of its own
+     */
+    private void loadPartitions(final TablePlan plan, List<KeyRange> ranges, List<ChunkProgress> progress,
+                                boolean truncate, final ExecutionReport.TableResult result)
+            throws ClassNotFoundException, SQLException {
+        if (truncate) {
+            truncate(plan);
+        }
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicReference<SQLException> failure = new AtomicReference<>();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(ranges.size(), workerCount(plan)),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "mapping-" + plan.target.getName() + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                final KeyRange range = ranges.get(i);
+                final ChunkProgress chunk = progress != null ? progress.get(i) : null;
+                futures.add(workers.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        try {
+                            return loadRange(plan, range, false, failed, chunk, result);
+                        } catch (Exception e) {
+                            // Keep the first failure; later ones are usually partitions stopping because of it
+                            failure.compareAndSet(null, new SQLException("Partition " + range + " failed: " +
+                                    e.getMessage(), e));
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+                }));
+            }
+
+            long read = 0;
+            long written = 0;
+            for (Future<long[]> future : futures) {
+                try {
+                    long[] counts = future.get();
+                    read += counts[0];
+                    written += counts[1];
+                } catch (ExecutionException e) {
+                    // Reported through failure once all partitions have ended
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed.set(true);
+                    throw new SQLException("Interrupted while loading " + plan.target.getName(), e);
+                }
+            }
+            result.setRowsRead(read);
+            result.setRowsWritten(written);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static void truncate(TablePlan plan) throws ClassNotFoundException, SQLException {
+        try (Connection conn = DatabaseConnectionManager.getConnection(plan.targetDS);
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM " + SqlDialect.of(plan.targetDS).quote(plan.target.getName()));
+        }
+    }
+
+    /**
+     * The number of partitions to run at once: the configured parallelism, limited so that
+     * every worker can hold its connections within the table's share of each pool
+     */
+    private int workerCount(TablePlan plan) {
+        int workers = options.getParallelism();
+        for (Map.Entry<ConnectionPool, Integer> entry : workerConnections(plan).entrySet()) {
+            int share = entry.getKey().getMaxSize() / plan.tablesPerPool;
+            workers = Math.min(workers, share / entry.getValue());
+        }
+        return Math.max(1, workers);
+    }
+
+    /**
+     * @return The connections one partition worker holds, per pool: source, target and one
+     * per data source of per-row lookups
+     */
+    private Map<ConnectionPool, Integer> workerConnections(TablePlan plan) {
+        Map<ConnectionPool, Integer> perWorker = new HashMap<>();
+        count(perWorker, plan.sourceDS);
+        count(perWorker, plan.targetDS);
+        Set<String> perRowLookups = new HashSet<>();
+        for (Map.Entry<String, List<ExternalConnection>> group : plan.lookupGroups.entrySet()) {
+            int index = plan.mappings.indexOf(group.getValue().get(0));
+            if (!plan.pushedDown[index] && !plan.sharedLookups.containsKey(group.getKey())) {
+                String lookupDS = sourceTable(plan.model, group.getValue().get(0).getWhereIdColumn()).getDataSourceName();
+                if (perRowLookups.add(lookupDS)) {
+                    count(perWorker, dataSource(lookupDS));
+                }
+            }
+        }
+        return perWorker;
+    }
+
+    private static void count(Map<ConnectionPool, Integer> perWorker, DataSource dataSource) {
+        ConnectionPool pool = DatabaseConnectionManager.getPool(dataSource);
+        Integer count = perWorker.get(pool);
+        perWorker.put(pool, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Read, map and write one key range of a table on its own connections
+     *
+     * @param truncate Empty the target first, in the same transaction
+     * @param failed Set when another partition failed; the range then stops early
+     * @param progress Commits and checkpoints a chunk of a resumable load, or null
+     * @return Rows read and rows written
+     */
+    private long[] loadRange(TablePlan plan, KeyRange range, boolean truncate, AtomicBoolean failed,
+                             ChunkProgress progress, ExecutionReport.TableResult result) throws ClassNotFoundException, SQLException {
+        // All connections of the range are taken together, so no worker holds one while waiting for another
+        Map<ConnectionPool, Integer> connections = workerConnections(plan);
+        try {
+            POOL_BUDGET.acquire(connections);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for connections to load " + plan.target.getName(), e);
+        }
+        List<AutoCloseable> resources = new ArrayList<>();
+        Map<String, Connection> lookupConnections = new LinkedHashMap<>();
+        Map<String, GroupLookup> groupLookups = new HashMap<>(plan.sharedLookups);
+        try (Connection sourceConn = DatabaseConnectionManager.getConnection(plan.sourceDS);
+             Connection targetConn = DatabaseConnectionManager.getConnection(plan.targetDS)) {
+
+            RowTransformer transformer = transformer(plan, groupLookups, lookupConnections, resources);
+
+            SqlDialect targetDialect = SqlDialect.of(plan.targetDS);
+            if (truncate) {
+                try (Statement stmt = targetConn.createStatement()) {
+                    targetConn.setAutoCommit(false);
+                    stmt.executeUpdate("DELETE FROM " + targetDialect.quote(plan.target.getName()));
+                }
+            }
+
+            // A checkpointed chunk commits only when its progress is recorded
+            int commitInterval = progress != null ? 0 : options.getCommitInterval();
+            // The source is streamed through a cursor, so memory use does not grow with the table
+            try (RowSink sink = sink(targetConn, targetDialect, plan.target, plan.targetColumns, plan.types,
+                    commitInterval);
+                 SourceCursor cursor = cursor(sourceConn, plan, range)) {
+                ResultSet rs = cursor.getResultSet();
+                if (progress != null) {
+                    progress.start(sink);
+                }
+                if (options.isPipelined()) {
+                    RowPipeline pipeline = new RowPipeline("mapping-" + plan.target.getName(),
+                            options.getPipelineBatchSize(), options.getPipelineQueueCapacity());
+                    running.add(pipeline);
+                    try {
+                        long read = pipeline.run(rs, transformer, sink, failed, progress);
+                        return new long[]{read, progress != null ? progress.finish() : sink.finish()};
+                    } finally {
+                        running.remove(pipeline);
+                        result.addQueueStats(pipeline.getStats());
+                    }
+                }
+
+                ColumnBatch source = new ColumnBatch(ColumnBatch.kinds(rs.getMetaData()),
+                        options.getPipelineBatchSize());
+                ColumnBatch target = transformer.target(source);
+                long read = 0;
+                boolean more = true;
+                while (more) {
+                    if (failed.get()) {
+                        throw new SQLException("Stopped: another partition of " + plan.target.getName() + " failed");
+                    }
+                    more = source.read(rs);
+                    transformer.transform(source, target);
+                    RowPipeline.write(source, target, sink, progress);
+                    read += source.size();
+                }
+                return new long[]{read, progress != null ? progress.finish() : sink.finish()};
+            }
+        } finally {
+            closeAll(resources);
+            closeAll(new ArrayList<AutoCloseable>(lookupConnections.values()));
+            POOL_BUDGET.release(connections);
+        }
+    }
+
+    /**
+     * Open the source query of one key range, with an incremental load's window applied
+     */
+    private static SourceCursor cursor(Connection conn, TablePlan plan, KeyRange range) throws SQLException {
+        List<String> conditions = new ArrayList<>();
+        List<Object> parameters = new ArrayList<>();
+        String rangeCondition = range.condition(SqlDialect.of(plan.sourceDS));
+        if (rangeCondition != null) {
+            conditions.add(rangeCondition);
+            Collections.addAll(parameters, range.parameters());
+        }
+        if (plan.condition != null) {
+            conditions.add(plan.condition);
+            parameters.addAll(plan.parameters);
+        }
+        String where = conditions.isEmpty() ? null : join(conditions);
+        return new SourceCursor(conn, plan.sourceDS, plan.query.toSql(where, plan.orderBy), parameters.toArray());
+    }
+
+    private RowSink sink(Connection conn, SqlDialect dialect, TargetTable target, List<String> columns,
+                         ColumnMetadata[] types, int commitInterval) throws SQLException {
+        if (options.getWriteMode() == EngineOptions.WriteMode.UPSERT) {
+            String sql = InsertSink.upsertSql(dialect, target.getName(), columns,
+                    target.getTable().getPrimaryKeyColumns());
+            return new InsertSink(conn, sql, types, options.getBatchSize(), commitInterval);
+        }
+        if (dialect.isPostgres() && options.isCopyToPostgres()) {
+            return new CopySink(conn, dialect, target.getName(), columns, commitInterval);
+        }
+        return new InsertSink(conn, dialect, target.getName(), columns, types,
+                options.getBatchSize(), commitInterval);
+    }
+
+    /**
+     * @return The column of the driving row a mapping reads, or null for constants
+     */
+    private static SourceColumn drivingInput(Mapping mapping) {
+        if (mapping instanceof None) {
+            return ((None) mapping).getSourceColumn();
+        } else if (mapping instanceof Dict) {
+            return ((Dict) mapping).getSourceColumn();
+        } else if (mapping instanceof ExternalConnection) {
+            return ((ExternalConnection) mapping).getSourceIdColumn();
+        }
+        return null;
+    }
+
+    /**
+     * Group the ExternalConnection mappings by join signature, in first-use order
+     */
+    private static Map<String, List<ExternalConnection>> lookupGroups(List<Mapping> mappings) {
+        Map<String, List<ExternalConnection>> groups = new LinkedHashMap<>();
+        for (Mapping mapping : mappings) {
+            if (mapping instanceof ExternalConnection) {
+                ExternalConnection external = (ExternalConnection) mapping;
+                List<ExternalConnection> group = groups.get(external.getJoinSignature());
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(external.getJoinSignature(), group);
+                }
+                group.add(external);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Whether a group of ExternalConnections can be resolved inside the source query: all
+     * their tables must live in the driving table's data source, and the dialect must
+     * support the LIMIT 1 subquery used when the join path is not known to be unique
+     */
+    private boolean canPushDown(MappingModel model, List<ExternalConnection> group, DataSource sourceDS) {
+        if (!options.isPushDownLookups()) {
+            return false;
+        }
+        ExternalConnection mapping = group.get(0);
+        SqlDialect dialect = SqlDialect.of(sourceDS);
+        if (!dialect.isPostgres() && !dialect.isMysql() && !isUniquePath(model, mapping)) {
+            return false;
+        }
+        List<SourceColumn> columns = new ArrayList<>();
+        columns.add(mapping.getWhereIdColumn());
+        for (ExternalConnection member : group) {
+            columns.add(member.getFinalSelectColumn());
+        }
+        for (LeftJoin join : mapping.getJoins()) {
+            columns.add(join.getLeftColumn());
+            columns.add(join.getRightColumn());
+        }
+        for (SourceColumn column : columns) {
+            if (!sourceDS.getName().equals(sourceTable(model, column).getDataSourceName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether whereIdColumn and every joined column are known to be unique, so that
+     * LEFT JOINing the lookup tables yields at most one row per driving row
+     */
+    private static boolean isUniquePath(MappingModel model, ExternalConnection mapping) {
+        if (!isUnique(model, mapping.getWhereIdColumn())) {
+            return false;
+        }
+        for (JoinPath.Step step : JoinPath.of(mapping).getSteps()) {
+            if (!isUnique(model, step.joinColumn)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUnique(MappingModel model, SourceColumn column) {
+        Table table = sourceTable(model, column).getTable();
+        ColumnMetadata metadata = table.getColumnMetadata(column.getName());
+        return metadata != null && (metadata.isUnique() ||
+                metadata.isPrimaryKey() && table.getPrimaryKeyColumns().size() == 1);
+    }
+
+    /**
+     * Compile the mappings of a table into the slot tables of a {@link RowTransformer}, resolving
+     * dictionaries and lookups once for the partition instead of once per row
+     */
+    private RowTransformer transformer(TablePlan plan, Map<String, GroupLookup> groupLookups,
+                                       Map<String, Connection> lookupConnections, List<AutoCloseable> resources)
+            throws ClassNotFoundException, SQLException {
+        RowTransformer transformer = new RowTransformer(plan.mappings.size());
+        for (int i = 0; i < plan.mappings.size(); i++) {
+            Mapping mapping = plan.mappings.get(i);
+            int index = plan.inputs[i];
+            if (plan.pushedDown[i] || mapping instanceof None) {
+                transformer.copy(i, index);
+            } else if (mapping instanceof Constant) {
+                transformer.constant(i, ((Constant) mapping).getConstantValue());
+            } else if (mapping instanceof Dict) {
+                transformer.dict(i, index, plan.dictionaries.get(i));
+            } else if (mapping instanceof ExternalConnection) {
+                ExternalConnection external = (ExternalConnection) mapping;
+                List<ExternalConnection> group = plan.lookupGroups.get(external.getJoinSignature());
+                GroupLookup lookup = groupLookups.get(external.getJoinSignature());
+                if (lookup == null) {
+                    // Hash joins are built up front; this is the per-row fallback, one per partition
+                    DataSource lookupDS = dataSource(sourceTable(plan.model, external.getWhereIdColumn())
+                            .getDataSourceName());
+                    ExternalLookup perRow = new ExternalLookup(lookupConnection(lookupDS, lookupConnections),
+                            SqlDialect.of(lookupDS), group);
+                    resources.add(perRow);
+                    lookup = perRow;
+                    groupLookups.put(external.getJoinSignature(), lookup);
+                }
+                transformer.lookup(lookup, group.size(), group.indexOf(external), index, i);
+            } else {
+                throw new IllegalArgumentException("Unsupported mapping type: " + mapping.getClass().getSimpleName());
+            }
+        }
+        return transformer;
+    }
+
+    private static SourceTable sourceTable(MappingModel model, SourceColumn column) {
+        SourceTable table = model.getSourceTables().get(column.getTable().getName());
+        if (table == null) {
+            throw new IllegalArgumentException("Unknown source table " + column.getTable().getName());
+        }
+        return table;
+    }
+
+    private DataSource dataSource(String name) {
+        DataSource dataSource = dataSources.get(name);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Unknown data source: " + name);
+        }
+        return dataSource;
+    }
+
+    /**
+     * Lookups against the same data source share one connection for the whole table
+     */
+    private static Connection lookupConnection(DataSource dataSource, Map<String, Connection> connections)
+            throws ClassNotFoundException, SQLException {
+        Connection conn = connections.get(dataSource.getName());
+        if (conn == null) {
+            conn = DatabaseConnectionManager.getConnection(dataSource);
+            connections.put(dataSource.getName(), conn);
+        }
+        return conn;
+    }
+
+    private static void closeAll(List<AutoCloseable> resources) {
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                System.err.println("Failed to close " + resource + ": " + e.getMessage());
+            }
+        }
+    }
+}
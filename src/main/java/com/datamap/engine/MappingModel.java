@@ -0,0 +1,162 @@
+package com.datamap.engine;
+
+import com.datamap.model.SourceColumn;
+import com.datamap.model.SourceTable;
+import com.datamap.model.Table;
+import com.datamap.model.TargetColumn;
+import com.datamap.model.TargetTable;
+import com.datamap.model.mapping.*;
+import com.datamap.util.JsonConfig.Configuration;
+import com.datamap.util.JsonConfig.LeftJoinConfig;
+import com.datamap.util.JsonConfig.MappingConfig;
+import com.datamap.util.JsonConfig.TableConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tables and mappings of one configuration, as consumed by {@link MappingEngine}.
+ * Built either from the wizard's data model or from a saved {@link Configuration}.
+ */
+public class MappingModel {
+    private final Map<String, SourceTable> sourceTables;
+    private final Map<String, TargetTable> targetTables;
+    private final List<Mapping> mappings;
+
+    private MappingModel(Map<String, SourceTable> sourceTables, Map<String, TargetTable> targetTables,
+                         List<Mapping> mappings) {
+        this.sourceTables = sourceTables;
+        this.targetTables = targetTables;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Wrap the wizard's data model (the same maps Code.generateCode receives)
+     *
+     * @param sourceTables Source tables by name
+     * @param targetTables Target tables by name
+     * @param mappings All mappings
+     * @return The model
+     */
+    public static MappingModel of(Map<String, SourceTable> sourceTables, Map<String, TargetTable> targetTables,
+                                  List<Mapping> mappings) {
+        return new MappingModel(new LinkedHashMap<>(sourceTables), new LinkedHashMap<>(targetTables),
+                new ArrayList<>(mappings));
+    }
+
+    /**
+     * Build the model of a saved configuration, resolving table and column names the same
+     * way the wizard does when a configuration is loaded
+     *
+     * @param config The configuration
+     * @return The model
+     * @throws IllegalArgumentException If a mapping refers to a table or column that is not defined
+     */
+    public static MappingModel fromConfiguration(Configuration config) {
+        Map<String, SourceTable> sourceTables = new LinkedHashMap<>();
+        Map<String, TargetTable> targetTables = new LinkedHashMap<>();
+        Map<String, SourceColumn> sourceColumns = new LinkedHashMap<>();
+        Map<String, TargetColumn> targetColumns = new LinkedHashMap<>();
+
+        for (TableConfig tableConfig : config.getSourceTables()) {
+            Table table = new Table(tableConfig.getName(), tableConfig.getColumns().toArray(new String[0]));
+            if (tableConfig.getColumnMetadata() != null) {
+                table.putColumnMetadata(tableConfig.getColumnMetadata());
+            }
+            SourceTable sourceTable = new SourceTable(table, tableConfig.getDataSourceName());
+            sourceTables.put(tableConfig.getName(), sourceTable);
+            for (String column : tableConfig.getColumns()) {
+                sourceColumns.put(tableConfig.getName() + "." + column, new SourceColumn(sourceTable, column));
+            }
+        }
+
+        for (TableConfig tableConfig : config.getTargetTables()) {
+            SourceTable sourceTable = sourceTables.get(tableConfig.getSourceTableName());
+            if (sourceTable == null) {
+                throw new IllegalArgumentException("Target table " + tableConfig.getName() +
+                        " is based on unknown source table " + tableConfig.getSourceTableName());
+            }
+            Table table = new Table(tableConfig.getName(), tableConfig.getColumns().toArray(new String[0]));
+            if (tableConfig.getColumnMetadata() != null) {
+                table.putColumnMetadata(tableConfig.getColumnMetadata());
+            }
+            TargetTable targetTable = new TargetTable(sourceTable, table, tableConfig.getDataSourceName());
+            targetTables.put(tableConfig.getName(), targetTable);
+            for (String column : tableConfig.getColumns()) {
+                targetColumns.put(tableConfig.getName() + "." + column, new TargetColumn(targetTable, column));
+            }
+        }
+
+        List<Mapping> mappings = new ArrayList<>();
+        for (MappingConfig mappingConfig : config.getMappings()) {
+            TargetColumn target = lookup(targetColumns, mappingConfig.getTargetTable(), mappingConfig.getTargetColumn());
+            if ("None".equals(mappingConfig.getType())) {
+                mappings.add(new None(target,
+                        lookup(sourceColumns, mappingConfig.getSourceTable(), mappingConfig.getSourceColumn())));
+            } else if ("Dict".equals(mappingConfig.getType())) {
+                mappings.add(new Dict(target, mappingConfig.getDictType(),
+                        lookup(sourceColumns, mappingConfig.getSourceTable(), mappingConfig.getSourceColumn())));
+            } else if ("Constant".equals(mappingConfig.getType())) {
+                mappings.add(new Constant(target, mappingConfig.getConstantValue()));
+            } else if ("ExternalConnection".equals(mappingConfig.getType())) {
+                // Older configurations have no whereSelectTable; it defaulted to the final select table
+                String whereSelectTable = mappingConfig.getWhereSelectTable();
+                if (whereSelectTable == null || whereSelectTable.isEmpty()) {
+                    whereSelectTable = mappingConfig.getFinalSelectTable();
+                }
+                SourceColumn whereId = lookup(sourceColumns, whereSelectTable, mappingConfig.getWhereIdColumn());
+                ExternalConnection mapping = new ExternalConnection(target,
+                        lookup(sourceColumns, mappingConfig.getFinalSelectTable(), mappingConfig.getFinalSelectColumn()),
+                        whereId, whereId,
+                        lookup(sourceColumns, mappingConfig.getSourceIdTable(), mappingConfig.getSourceIdColumn()));
+                for (LeftJoinConfig joinConfig : mappingConfig.getLeftJoins()) {
+                    mapping.addJoin(new LeftJoin(
+                            lookup(sourceColumns, joinConfig.getLeftTable(), joinConfig.getLeftColumn()),
+                            lookup(sourceColumns, joinConfig.getRightTable(), joinConfig.getRightColumn())));
+                }
+                mappings.add(mapping);
+            } else {
+                throw new IllegalArgumentException("Unknown mapping type: " + mappingConfig.getType());
+            }
+        }
+
+        return new MappingModel(sourceTables, targetTables, mappings);
+    }
+
+    private static <T> T lookup(Map<String, T> columns, String table, String column) {
+        T value = columns.get(table + "." + column);
+        if (value == null) {
+            throw new IllegalArgumentException("Mapping refers to unknown column " + table + "." + column);
+        }
+        return value;
+    }
+
+    public Map<String, SourceTable> getSourceTables() {
+        return Collections.unmodifiableMap(sourceTables);
+    }
+
+    public Map<String, TargetTable> getTargetTables() {
+        return Collections.unmodifiableMap(targetTables);
+    }
+
+    public List<Mapping> getMappings() {
+        return Collections.unmodifiableList(mappings);
+    }
+
+    /**
+     * @param targetTableName The target table name
+     * @return The mappings that fill columns of this target table, in configuration order
+     */
+    public List<Mapping> getMappingsFor(String targetTableName) {
+        List<Mapping> result = new ArrayList<>();
+        for (Mapping mapping : mappings) {
+            if (mapping.getTargetColumn().getTable().getName().equals(targetTableName)) {
+                result.add(mapping);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package com.datamap.engine;
+
+import com.datamap.model.DataSource;
+import com.datamap.util.ConfigManager;
+import com.datamap.util.DataSourceConfig;
+import com.datamap.util.JsonConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命令行运行已保存的映射配置，使用 ~/.data-mapping-wizard/datasource.json 中的数据源
+ * <p>
+ * 用法: MappingRunner [选项] config1.json [config2.json ...]
+ * <ul>
+ * <li>--truncate 写入前清空目标表</li>
+ * <li>--upsert 按目标表主键插入或更新，重复运行结果不变</li>
+ * <li>--partitions N 按主键（或 --partition-column 指定的列）分段并行抽取</li>
+ * <li>--partition-column 源表=列</li>
+ * <li>--watermark 源表=列 按水位列增量运行，水位保存在 ~/.data-mapping-wizard/watermarks.json</li>
+ * <li>--tables N 同时运行的目标表数（默认 4）；互不依赖的目标表并行运行，外键引用的表先运行</li>
+ * <li>--datasource-limit 数据源=N 同时读写该数据源的目标表数</li>
+ * <li>--after 目标表=前置目标表 前置目标表成功后才运行目标表</li>
+ * <li>--resumable 按分段键顺序提交并记录检查点（~/.data-mapping-wizard/checkpoints），中断后重新运行从断点继续</li>
+ * <li>--lookup-memory MB 本次运行所有哈希连接查找表共用的堆内存总量，超出后按分区溢出到临时文件（0 不限制）</li>
+ * </ul>
+ */
+public class MappingRunner {
+    public static void main(String[] args) throws IOException {
+        EngineOptions options = new EngineOptions();
+        List<String> paths = new ArrayList<>();
+        List<String[]> limits = new ArrayList<>();
+        List<String[]> hints = new ArrayList<>();
+        int tables = 4;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--truncate".equals(arg)) {
+                    options.setTruncateTarget(true);
+                } else if ("--upsert".equals(arg)) {
+                    options.setWriteMode(EngineOptions.WriteMode.UPSERT);
+                } else if ("--tables".equals(arg) && i + 1 < args.length) {
+                    tables = Integer.parseInt(args[++i]);
+                } else if ("--datasource-limit".equals(arg) && i + 1 < args.length) {
+                    limits.add(tableColumn(args[++i]));
+                } else if ("--after".equals(arg) && i + 1 < args.length) {
+                    hints.add(tableColumn(args[++i]));
+                } else if ("--resumable".equals(arg)) {
+                    options.setResumable(true);
+                } else if ("--lookup-memory".equals(arg) && i + 1 < args.length) {
+                    options.setLookupMemoryBudget(Long.parseLong(args[++i]) * 1024 * 1024);
+                } else if ("--partitions".equals(arg) && i + 1 < args.length) {
+                    options.setPartitions(Integer.parseInt(args[++i]));
+                } else if ("--partition-column".equals(arg) && i + 1 < args.length) {
+                    String[] pair = tableColumn(args[++i]);
+                    options.setPartitionColumn(pair[0], pair[1]);
+                } else if ("--watermark".equals(arg) && i + 1 < args.length) {
+                    String[] pair = tableColumn(args[++i]);
+                    options.setWatermarkColumn(pair[0], pair[1]);
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    paths.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            paths.clear();
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: MappingRunner [--truncate] [--upsert] [--resumable] [--tables N] [--datasource-limit name=N]" +
+                    " [--after table=prerequisite] [--lookup-memory total-MB] [--partitions N] [--partition-column table=column]" +
+                    " [--watermark table=column] <config.json> [<config.json> ...]");
+            System.exit(2);
+        }
+
+        List<DataSource> dataSources = DataSourceConfig.loadFromFile(new File(ConfigManager.getConfigPath()));
+        MappingEngine engine = new MappingEngine(dataSources, options);
+        TableScheduler scheduler = new TableScheduler(engine, dataSources);
+        List<MappingModel> models = new ArrayList<>();
+        ExecutionReport report;
+        try {
+            scheduler.setMaxConcurrentTables(tables);
+            for (String[] limit : limits) {
+                scheduler.setDataSourceLimit(limit[0], Integer.parseInt(limit[1]));
+            }
+            for (String[] hint : hints) {
+                scheduler.addOrderingHint(hint[1], hint[0]);
+            }
+            for (String path : paths) {
+                models.add(MappingModel.fromConfiguration(JsonConfig.loadFromFile(new File(path))));
+            }
+            report = scheduler.run(models);
+        } catch (IllegalArgumentException | ClassNotFoundException | SQLException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println(report);
+        System.exit(report.isSuccess() ? 0 : 1);
+    }
+
+    private static String[] tableColumn(String value) {
+        int eq = value.indexOf('=');
+        if (eq <= 0 || eq == value.length() - 1) {
+            throw new IllegalArgumentException("Expected table=column: " + value);
+        }
+        return new String[]{value.substring(0, eq), value.substring(eq + 1)};
+    }
+}
@@ -0,0 +1,33 @@
+package com.datamap.engine;
+
+/**
+ * Heap bytes shared by the hash join tables being built or held at the same time, so the
+ * limit holds for a run as a whole, however many lookups and tables it has. A table that
+ * cannot reserve room for a row spills part of itself to disk instead.
+ */
+class MemoryBudget {
+    private final long limit;
+    private long used;
+
+    /**
+     * @param limit Approximate heap bytes; 0 for no limit
+     */
+    MemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return false, reserving nothing, if the bytes do not fit
+     */
+    synchronized boolean reserve(long bytes) {
+        if (limit > 0 && used + bytes > limit) {
+            return false;
+        }
+        used += bytes;
+        return true;
+    }
+
+    synchronized void release(long bytes) {
+        used -= bytes;
+    }
+}
@@ -0,0 +1,62 @@
+package com.datamap.engine;
+
+import com.datamap.util.ConnectionPool;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out the slots of connection pools to partition workers, all of a worker's slots at
+ * once: a worker takes every connection it needs or waits holding none. Workers of tables
+ * running at the same time thus queue for a pool, instead of each holding its source
+ * connection while timing out on its target connection.
+ */
+class PoolBudget {
+    private final Map<ConnectionPool, Integer> inUse = new HashMap<>();
+
+    /**
+     * Wait until every pool has room for its count, then take them together
+     *
+     * @param needs Connections per pool
+     * @throws InterruptedException If interrupted while waiting
+     * @throws IllegalArgumentException If a pool is smaller than what is asked of it
+     */
+    synchronized void acquire(Map<ConnectionPool, Integer> needs) throws InterruptedException {
+        for (Map.Entry<ConnectionPool, Integer> need : needs.entrySet()) {
+            if (need.getValue() > need.getKey().getMaxSize()) {
+                throw new IllegalArgumentException("A worker needs " + need.getValue() + " connections to " +
+                        need.getKey().getDataSource().getName() + ", its pool has " + need.getKey().getMaxSize());
+            }
+        }
+        while (!fits(needs)) {
+            wait();
+        }
+        for (Map.Entry<ConnectionPool, Integer> need : needs.entrySet()) {
+            inUse.put(need.getKey(), count(need.getKey()) + need.getValue());
+        }
+    }
+
+    /**
+     * Give back what {@link #acquire(Map)} took
+     */
+    synchronized void release(Map<ConnectionPool, Integer> needs) {
+        for (Map.Entry<ConnectionPool, Integer> need : needs.entrySet()) {
+            inUse.put(need.getKey(), count(need.getKey()) - need.getValue());
+        }
+        notifyAll();
+    }
+
+    private boolean fits(Map<ConnectionPool, Integer> needs) {
+        for (Map.Entry<ConnectionPool, Integer> need : needs.entrySet()) {
+            if (count(need.getKey()) + need.getValue() > need.getKey().getMaxSize()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int count(ConnectionPool pool) {
+        Integer count = inUse.get(pool);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,133 @@
+package com.datamap.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs EXPLAIN on PostgreSQL and MySQL and reads the optimizer's estimates from its JSON
+ * output. Nothing is executed: the figures are the planner's guesses from table statistics,
+ * good for spotting a missing index, not for predicting run times.
+ */
+class QueryExplainer {
+    /** Tables with at least this many rows are worth a warning when scanned in full */
+    static final long LARGE_TABLE_ROWS = 100000;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The planner's view of one query
+     */
+    static class Estimate {
+        double rows;
+        double cost;
+        final List<String> fullScans = new ArrayList<>();
+    }
+
+    /**
+     * @param conn A connection to the query's data source
+     * @param dialect Its dialect
+     * @param sql The query
+     * @param parameters Values for its ? placeholders
+     * @return The estimated rows and cost, and the full scans of large tables
+     * @throws SQLException If the query cannot be explained, or the database is neither PostgreSQL nor MySQL
+     */
+    static Estimate explain(Connection conn, SqlDialect dialect, String sql, Object... parameters)
+            throws SQLException {
+        if (!dialect.isPostgres() && !dialect.isMysql()) {
+            throw new SQLException("EXPLAIN is only supported on PostgreSQL and MySQL");
+        }
+        String json;
+        try (PreparedStatement ps = conn.prepareStatement(
+                (dialect.isPostgres() ? "EXPLAIN (FORMAT JSON) " : "EXPLAIN FORMAT=JSON ") + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                json = rs.getString(1);
+            }
+        }
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new SQLException("Unreadable EXPLAIN output: " + e.getMessage(), e);
+        }
+
+        Estimate estimate = new Estimate();
+        if (dialect.isPostgres()) {
+            JsonNode plan = root.path(0).path("Plan");
+            estimate.rows = plan.path("Plan Rows").asDouble();
+            estimate.cost = plan.path("Total Cost").asDouble();
+            postgresScans(conn, plan, estimate);
+        } else {
+            JsonNode block = root.path("query_block");
+            estimate.cost = block.path("cost_info").path("query_cost").asDouble();
+            estimate.rows = -1;
+            mysqlScans(block, estimate);
+            estimate.rows = Math.max(0, estimate.rows);
+        }
+        return estimate;
+    }
+
+    /**
+     * Collect the Seq Scans of a PostgreSQL plan; their Plan Rows count rows after the filter,
+     * so the table size comes from the statistics in pg_class
+     */
+    private static void postgresScans(Connection conn, JsonNode plan, Estimate estimate) throws SQLException {
+        if ("Seq Scan".equals(plan.path("Node Type").asText())) {
+            String table = plan.path("Relation Name").asText();
+            long rows = 0;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT MAX(reltuples)::bigint FROM pg_class WHERE relname = ?")) {
+                ps.setString(1, table);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        rows = rs.getLong(1);
+                    }
+                }
+            }
+            if (rows >= LARGE_TABLE_ROWS) {
+                estimate.fullScans.add(table + " (~" + rows + " rows)");
+            }
+        }
+        for (JsonNode child : plan.path("Plans")) {
+            postgresScans(conn, child, estimate);
+        }
+    }
+
+    /**
+     * Collect the full table and index scans of a MySQL plan. Tables are listed in join
+     * order, so the first one's rows_produced_per_join is the driving table's estimate.
+     */
+    private static void mysqlScans(JsonNode node, Estimate estimate) {
+        if (node.isObject()) {
+            if (node.has("table_name") && node.has("access_type")) {
+                if (estimate.rows < 0) {
+                    estimate.rows = node.path("rows_produced_per_join").asDouble();
+                }
+                String access = node.path("access_type").asText();
+                long rows = node.path("rows_examined_per_scan").asLong();
+                if (("ALL".equals(access) || "index".equals(access)) && rows >= LARGE_TABLE_ROWS) {
+                    estimate.fullScans.add(node.path("table_name").asText() + " (~" + rows + " rows)");
+                }
+            }
+            for (Iterator<JsonNode> it = node.elements(); it.hasNext(); ) {
+                mysqlScans(it.next(), estimate);
+            }
+        } else if (node.isArray()) {
+            for (JsonNode element : node) {
+                mysqlScans(element, estimate);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.datamap.engine;
+
+/**
+ * Counters of one queue between two pipeline stages. Time the producer spent waiting
+ * means the consumer was the bottleneck (backpressure); time the consumer spent waiting
+ * means the producer was.
+ */
+public class QueueStats {
+    private final String name;
+    private final int capacity;
+    private final int depth;
+    private final int maxDepth;
+    private final long batches;
+    private final long putWaitMillis;
+    private final long takeWaitMillis;
+
+    public QueueStats(String name, int capacity, int depth, int maxDepth, long batches,
+                      long putWaitMillis, long takeWaitMillis) {
+        this.name = name;
+        this.capacity = capacity;
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.batches = batches;
+        this.putWaitMillis = putWaitMillis;
+        this.takeWaitMillis = takeWaitMillis;
+    }
+
+    /**
+     * @return Counters of both queues added up, e.g. over the partitions of a table
+     */
+    public QueueStats merge(QueueStats other) {
+        return new QueueStats(name, capacity, depth + other.depth, Math.max(maxDepth, other.maxDepth),
+                batches + other.batches, putWaitMillis + other.putWaitMillis, takeWaitMillis + other.takeWaitMillis);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Batches waiting in the queue when the counters were taken
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return Time the producing stage was blocked on a full queue
+     */
+    public long getPutWaitMillis() {
+        return putWaitMillis;
+    }
+
+    /**
+     * @return Time the consuming stage was blocked on an empty queue
+     */
+    public long getTakeWaitMillis() {
+        return takeWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d batches, depth %d/%d (max %d), producer waited %d ms, consumer waited %d ms",
+                name, batches, depth, capacity, maxDepth, putWaitMillis, takeWaitMillis);
+    }
+}
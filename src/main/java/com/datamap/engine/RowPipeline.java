@@ -0,0 +1,270 @@
+package com.datamap.engine;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs read, map and write of one key range as three concurrent stages: the calling thread
+ * reads the source cursor, a second thread evaluates the mappings (including any lookup
+ * queries), a third writes to the sink. The stages hand over batches of rows through
+ * bounded queues, so a slow target blocks the stages before it instead of letting rows
+ * pile up on the heap. Batches are columnar ({@link ColumnBatch}) and recycled, so the
+ * pipeline itself allocates nothing per row.
+ * <p>
+ * Each connection is still used by one thread only: the source by the reader, lookup
+ * connections by the mapper, the target by the writer.
+ */
+class RowPipeline {
+    private static final long POLL_MILLIS = 50;
+
+    /**
+     * Source and target values of up to batchSize rows
+     */
+    private static class RowBatch {
+        final ColumnBatch source;
+        final ColumnBatch target;
+
+        RowBatch(ColumnBatch source, ColumnBatch target) {
+            this.source = source;
+            this.target = target;
+        }
+    }
+
+    /** Marks the end of the rows */
+    private static final RowBatch END = new RowBatch(null, null);
+
+    /**
+     * An ArrayBlockingQueue that counts how long its producer and consumer were blocked
+     */
+    private class StageQueue {
+        private final String name;
+        private final int capacity;
+        private final ArrayBlockingQueue<RowBatch> queue;
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong putWaitNanos = new AtomicLong();
+        private final AtomicLong takeWaitNanos = new AtomicLong();
+        private volatile int maxDepth;
+
+        StageQueue(String name, int capacity) {
+            this.name = name;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void put(RowBatch batch) throws InterruptedException {
+            if (!queue.offer(batch)) {
+                long start = System.nanoTime();
+                while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkAborted();
+                }
+                putWaitNanos.addAndGet(System.nanoTime() - start);
+            }
+            if (batch != END) {
+                batches.incrementAndGet();
+            }
+            int depth = queue.size();
+            if (depth > maxDepth) {
+                maxDepth = depth;
+            }
+        }
+
+        RowBatch take() throws InterruptedException {
+            RowBatch batch = queue.poll();
+            if (batch == null) {
+                long start = System.nanoTime();
+                while ((batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    checkAborted();
+                }
+                takeWaitNanos.addAndGet(System.nanoTime() - start);
+            }
+            return batch;
+        }
+
+        QueueStats stats() {
+            return new QueueStats(name, capacity, queue.size(), maxDepth, batches.get(),
+                    putWaitNanos.get() / 1000000, takeWaitNanos.get() / 1000000);
+        }
+    }
+
+    /**
+     * Thrown inside a stage when another stage failed
+     */
+    private static class AbortedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        AbortedException() {
+            super("Pipeline aborted");
+        }
+    }
+
+    private final String name;
+    private final int batchSize;
+    private final int capacity;
+    private final StageQueue free;
+    private final StageQueue read;
+    private final StageQueue mapped;
+    private final AtomicBoolean aborted = new AtomicBoolean();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param name Names the stage threads
+     * @param batchSize Rows per batch
+     * @param capacity Batches each queue holds before its producer blocks
+     */
+    RowPipeline(String name, int batchSize, int capacity) {
+        this.name = name;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        // Every batch is in a queue or held by one stage, so this many never run out
+        this.free = new StageQueue("free", capacity * 2 + 3);
+        this.read = new StageQueue("read -> map", capacity);
+        this.mapped = new StageQueue("map -> write", capacity);
+    }
+
+    /**
+     * @return The queues between reader and mapper and between mapper and writer
+     */
+    QueueStats[] getStats() {
+        return new QueueStats[]{read.stats(), mapped.stats()};
+    }
+
+    /**
+     * Stream all rows of a cursor through the mappings into a sink; the sink is not finished
+     *
+     * @param rs The source rows
+     * @param transformer The compiled mappings
+     * @param sink The destination
+     * @param stop Set from outside to abandon the run
+     * @param progress Told of each row before the writer writes it, or null
+     * @return The number of rows read
+     * @throws SQLException If a stage failed, with the first failure as cause
+     */
+    long run(ResultSet rs, final RowTransformer transformer, final RowSink sink,
+             AtomicBoolean stop, final ChunkProgress progress) throws SQLException {
+        ColumnBatch.Kind[] kinds = ColumnBatch.kinds(rs.getMetaData());
+        for (int i = 0; i < capacity * 2 + 3; i++) {
+            ColumnBatch source = new ColumnBatch(kinds, batchSize);
+            free.queue.add(new RowBatch(source, transformer.target(source)));
+        }
+
+        Thread mapper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stage(new Stage() {
+                    @Override
+                    public void run() throws Exception {
+                        RowBatch batch;
+                        while ((batch = read.take()) != END) {
+                            transformer.transform(batch.source, batch.target);
+                            mapped.put(batch);
+                        }
+                        mapped.put(END);
+                    }
+                });
+            }
+        }, name + "-map");
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stage(new Stage() {
+                    @Override
+                    public void run() throws Exception {
+                        RowBatch batch;
+                        while ((batch = mapped.take()) != END) {
+                            write(batch.source, batch.target, sink, progress);
+                            free.put(batch);
+                        }
+                    }
+                });
+            }
+        }, name + "-write");
+        mapper.setDaemon(true);
+        writer.setDaemon(true);
+        mapper.start();
+        writer.start();
+
+        final long[] count = new long[1];
+        final ResultSet cursor = rs;
+        final AtomicBoolean stopped = stop;
+        stage(new Stage() {
+            @Override
+            public void run() throws Exception {
+                boolean more = true;
+                while (more) {
+                    if (stopped.get()) {
+                        throw new SQLException("Run stopped");
+                    }
+                    RowBatch batch = free.take();
+                    more = batch.source.read(cursor);
+                    count[0] += batch.source.size();
+                    read.put(batch);
+                }
+                read.put(END);
+            }
+        });
+
+        try {
+            mapper.join();
+            writer.join();
+        } catch (InterruptedException e) {
+            aborted.set(true);
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for " + name, e);
+        }
+        Throwable cause = failure.get();
+        if (cause instanceof SQLException) {
+            throw (SQLException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause != null) {
+            throw new SQLException(cause.getMessage(), cause);
+        }
+        return count[0];
+    }
+
+    /**
+     * Write the rows of a transformed batch to a sink
+     *
+     * @param source The source batch, for the progress of a resumable load
+     * @param target Its target batch
+     * @param progress Told of each row before it is written, or null
+     */
+    static void write(ColumnBatch source, ColumnBatch target, RowSink sink, ChunkProgress progress)
+            throws SQLException {
+        for (int r = 0; r < target.size(); r++) {
+            if (progress != null) {
+                progress.next(source, r);
+            }
+            sink.write(target, r);
+        }
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run a stage; its failure aborts the other stages
+     */
+    private void stage(Stage stage) {
+        try {
+            stage.run();
+        } catch (AbortedException e) {
+            // Another stage failed and recorded why
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+            aborted.set(true);
+        }
+    }
+
+    private void checkAborted() {
+        if (aborted.get()) {
+            throw new AbortedException();
+        }
+    }
+}
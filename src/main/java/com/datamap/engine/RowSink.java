@@ -0,0 +1,39 @@
+package com.datamap.engine;
+
+import java.sql.SQLException;
+
+/**
+ * Destination of mapped rows for one target table. Rows are written in target column
+ * order; nothing is visible in the target until {@link #finish()} succeeds.
+ */
+public interface RowSink extends AutoCloseable {
+
+    /**
+     * @param row The values of one target row, in target column order
+     * @throws SQLException If the row cannot be written
+     */
+    void write(Object[] row) throws SQLException;
+
+    /**
+     * Write one row of a column batch, encoding its primitive columns without boxing
+     *
+     * @param batch Target rows, one column per target column
+     * @param row The index of the row in the batch
+     * @throws SQLException If the row cannot be written
+     */
+    void write(ColumnBatch batch, int row) throws SQLException;
+
+    /**
+     * Flush and commit everything written so far
+     *
+     * @return The number of rows written
+     * @throws SQLException If the rows cannot be committed
+     */
+    long finish() throws SQLException;
+
+    /**
+     * Release the sink's resources; rows not yet committed are discarded
+     */
+    @Override
+    void close() throws SQLException;
+}
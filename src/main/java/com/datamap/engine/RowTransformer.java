@@ -0,0 +1,148 @@
+package com.datamap.engine;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The mappings of a target table compiled into flat slot tables, so turning a batch of
+ * source rows into target rows is a few array loops instead of one virtual call per column:
+ * <ul>
+ * <li>copies: the target column is the source column itself, shared by
+ * {@link #target(ColumnBatch)} and never touched per row (None mappings, pushed-down lookups)</li>
+ * <li>constants: one constant column, likewise never touched per row</li>
+ * <li>dictionaries: target slot from a dictionary lookup of a source slot</li>
+ * <li>lookups: one {@link GroupLookup} call per join signature, its values scattered to
+ * the target slots of the group's mappings</li>
+ * </ul>
+ */
+class RowTransformer {
+    private final int width;
+    private int[] copyTargets = new int[0];
+    private int[] copySources = new int[0];
+    private int[] constantTargets = new int[0];
+    private Object[] constantValues = new Object[0];
+    private int[] dictTargets = new int[0];
+    private int[] dictSources = new int[0];
+    private DictCache.Dictionary[] dictionaries = new DictCache.Dictionary[0];
+    private int[] lookupSources = new int[0];
+    private GroupLookup[] lookups = new GroupLookup[0];
+    // Per lookup, the target slot of each value it returns, or -1 for values no mapping uses
+    private int[][] lookupTargets = new int[0][];
+
+    /**
+     * @param width The number of target columns
+     */
+    RowTransformer(int width) {
+        this.width = width;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    void copy(int target, int source) {
+        copyTargets = append(copyTargets, target);
+        copySources = append(copySources, source);
+    }
+
+    void constant(int target, Object value) {
+        constantTargets = append(constantTargets, target);
+        constantValues = Arrays.copyOf(constantValues, constantValues.length + 1);
+        constantValues[constantValues.length - 1] = value;
+    }
+
+    void dict(int target, int source, DictCache.Dictionary dictionary) {
+        dictTargets = append(dictTargets, target);
+        dictSources = append(dictSources, source);
+        dictionaries = Arrays.copyOf(dictionaries, dictionaries.length + 1);
+        dictionaries[dictionaries.length - 1] = dictionary;
+    }
+
+    /**
+     * Send value slot of a lookup to a target slot; mappings sharing a lookup share its call
+     *
+     * @param lookup The lookup of the mapping's join signature
+     * @param width The number of values the lookup returns
+     * @param slot The value of the mapping
+     * @param source The source slot of the id the lookup is keyed on
+     * @param target The target slot
+     */
+    void lookup(GroupLookup lookup, int width, int slot, int source, int target) {
+        int index = 0;
+        while (index < lookups.length && lookups[index] != lookup) {
+            index++;
+        }
+        if (index == lookups.length) {
+            lookups = Arrays.copyOf(lookups, index + 1);
+            lookups[index] = lookup;
+            lookupSources = append(lookupSources, source);
+            int[] targets = new int[width];
+            Arrays.fill(targets, -1);
+            lookupTargets = Arrays.copyOf(lookupTargets, index + 1);
+            lookupTargets[index] = targets;
+        }
+        lookupTargets[index][slot] = target;
+    }
+
+    /**
+     * Create the target batch a source batch is transformed into. It shares the source
+     * batch's copied columns, so the two must be reused together.
+     *
+     * @param source The source batch
+     * @return A batch of the target width and the source batch's capacity
+     */
+    ColumnBatch target(ColumnBatch source) {
+        ColumnBatch.Vector[] columns = new ColumnBatch.Vector[width];
+        for (int i = 0; i < copyTargets.length; i++) {
+            columns[copyTargets[i]] = source.column(copySources[i]);
+        }
+        for (int i = 0; i < constantTargets.length; i++) {
+            columns[constantTargets[i]] = ColumnBatch.Vector.constant(constantValues[i]);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == null) {
+                columns[i] = new ColumnBatch.Vector(ColumnBatch.Kind.OBJECT, source.capacity());
+            }
+        }
+        return new ColumnBatch(columns, source.capacity());
+    }
+
+    /**
+     * Compute the dictionary and lookup columns of a batch; copied and constant columns
+     * are already in place
+     *
+     * @param source The source values, in query order
+     * @param target The batch created for source by {@link #target(ColumnBatch)}
+     * @throws SQLException If a lookup query fails
+     */
+    void transform(ColumnBatch source, ColumnBatch target) throws SQLException {
+        int size = source.size();
+        for (int i = 0; i < dictTargets.length; i++) {
+            ColumnBatch.Vector codes = source.column(dictSources[i]);
+            ColumnBatch.Vector names = target.column(dictTargets[i]);
+            DictCache.Dictionary dictionary = dictionaries[i];
+            for (int r = 0; r < size; r++) {
+                names.set(r, dictionary.lookup(codes.get(r)));
+            }
+        }
+        for (int i = 0; i < lookups.length; i++) {
+            ColumnBatch.Vector ids = source.column(lookupSources[i]);
+            int[] targets = lookupTargets[i];
+            for (int r = 0; r < size; r++) {
+                Object[] values = lookups[i].lookup(ids.get(r));
+                for (int slot = 0; slot < targets.length; slot++) {
+                    if (targets[slot] >= 0) {
+                        target.column(targets[slot]).set(r, values == null ? null : values[slot]);
+                    }
+                }
+            }
+        }
+        target.setSize(size);
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] grown = Arrays.copyOf(array, array.length + 1);
+        grown[array.length] = value;
+        return grown;
+    }
+}
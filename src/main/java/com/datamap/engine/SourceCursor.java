@@ -0,0 +1,89 @@
+package com.datamap.engine;
+
+import com.datamap.model.DataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A forward-only, read-only query whose rows are streamed from the server instead of
+ * being buffered in full, so reading a table of any size needs constant memory.
+ * <p>
+ * PostgreSQL only uses a server-side cursor when auto-commit is off and a fetch size is
+ * set. MySQL buffers everything unless the fetch size is Integer.MIN_VALUE (row-by-row
+ * streaming) or the URL enables useCursorFetch, in which case the configured fetch size
+ * is honoured. The connection must not run other statements while a cursor is open.
+ */
+public class SourceCursor implements AutoCloseable {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final Connection conn;
+    private final boolean autoCommit;
+    private final Statement statement;
+    private final ResultSet resultSet;
+
+    /**
+     * @param conn The connection to read from; it is used exclusively until the cursor is closed
+     * @param dataSource The data source, for its dbType and fetch size
+     * @param sql The query
+     * @param parameters Values for the query's ? placeholders
+     * @throws SQLException If the query fails
+     */
+    public SourceCursor(Connection conn, DataSource dataSource, String sql, Object... parameters) throws SQLException {
+        this.conn = conn;
+        this.autoCommit = conn.getAutoCommit();
+        int fetchSize = fetchSize(dataSource);
+
+        if (!"mysql".equals(dataSource.getDbType())) {
+            // A PostgreSQL cursor lives inside a transaction
+            conn.setAutoCommit(false);
+        }
+        PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        this.statement = ps;
+        try {
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setObject(i + 1, parameters[i]);
+            }
+            this.resultSet = ps.executeQuery();
+        } catch (SQLException e) {
+            statement.close();
+            conn.setAutoCommit(autoCommit);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The fetch size the driver should use for this data source
+     */
+    static int fetchSize(DataSource dataSource) {
+        int configured = dataSource.getFetchSize() != null ? dataSource.getFetchSize() : DEFAULT_FETCH_SIZE;
+        if ("mysql".equals(dataSource.getDbType())) {
+            String url = dataSource.getJdbcUrl();
+            boolean cursorFetch = url != null && url.toLowerCase().contains("usecursorfetch=true");
+            return cursorFetch ? configured : Integer.MIN_VALUE;
+        }
+        return configured;
+    }
+
+    public ResultSet getResultSet() {
+        return resultSet;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            resultSet.close();
+            statement.close();
+        } finally {
+            if (!conn.getAutoCommit()) {
+                // Read-only work; ends the transaction that held the cursor
+                conn.rollback();
+            }
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+}
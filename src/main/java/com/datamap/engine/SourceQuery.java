@@ -0,0 +1,158 @@
+package com.datamap.engine;
+
+import com.datamap.model.SourceColumn;
+import com.datamap.model.mapping.ExternalConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SELECT that reads the driving source table of a target table. Besides plain driving
+ * columns it can carry {@link ExternalConnection} lookups pushed down into the query, so
+ * the database resolves them in the same scan instead of the engine querying once per row.
+ * <p>
+ * The driving table is aliased "s"; every pushed-down lookup gets its own aliases, so a
+ * lookup may join the driving table itself or tables another lookup joins as well.
+ */
+class SourceQuery {
+    static final String DRIVING_ALIAS = "s";
+
+    private final SqlDialect dialect;
+    private final String table;
+    private final Map<String, Integer> columns = new LinkedHashMap<>();
+    private final List<String> selected = new ArrayList<>();
+    private final StringBuilder joins = new StringBuilder();
+    private int lookups;
+
+    SourceQuery(SqlDialect dialect, String table) {
+        this.dialect = dialect;
+        this.table = table;
+    }
+
+    /**
+     * @param name A column of the driving table
+     * @return Its index in the result row; a column is selected only once
+     */
+    int column(String name) {
+        Integer index = columns.get(name);
+        if (index == null) {
+            index = select(DRIVING_ALIAS + "." + dialect.quote(name));
+            columns.put(name, index);
+        }
+        return index;
+    }
+
+    /**
+     * Select the values of a group of ExternalConnection mappings along with the driving row.
+     * The group shares one join signature, so its lookup tables are joined only once. With a
+     * unique join path they are LEFT JOINed to the driving table; otherwise the lookup takes
+     * the first match, like the per-row query: through a LATERAL subquery on PostgreSQL, and
+     * one correlated subquery per value elsewhere.
+     *
+     * @param group Mappings with the same {@link ExternalConnection#getJoinSignature()}; their
+     *              tables must live in the driving table's data source
+     * @param unique Whether whereIdColumn and each joined column are unique, so the joins
+     *               cannot multiply driving rows
+     * @return The index in the result row of each mapping's value, in group order
+     */
+    int[] pushDown(List<ExternalConnection> group, boolean unique) {
+        ExternalConnection first = group.get(0);
+        JoinPath path = JoinPath.of(first);
+        String prefix = "x" + (++lookups);
+        Map<String, String> aliases = new HashMap<>();
+        aliases.put(path.getWhereTable(), prefix);
+
+        StringBuilder from = new StringBuilder();
+        for (int i = 0; i < path.getSteps().size(); i++) {
+            JoinPath.Step step = path.getSteps().get(i);
+            String alias = prefix + "_" + (i + 1);
+            // The step's other column belongs to a table already in the path
+            String on = column(aliases, step.joinedTo) + " = " + alias + "." + dialect.quote(step.joinColumn.getName());
+            aliases.put(step.table, alias);
+            from.append(" LEFT JOIN ").append(dialect.quote(step.table)).append(' ').append(alias)
+                    .append(" ON ").append(on);
+        }
+
+        String whereTable = dialect.quote(path.getWhereTable()) + " " + prefix;
+        String whereId = prefix + "." + dialect.quote(first.getWhereIdColumn().getName());
+        String sourceId = DRIVING_ALIAS + "." + dialect.quote(first.getSourceIdColumn().getName());
+        int[] indexes = new int[group.size()];
+        if (unique) {
+            joins.append(" LEFT JOIN ").append(whereTable)
+                    .append(" ON ").append(whereId).append(" = ").append(sourceId)
+                    .append(from);
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = select(column(aliases, group.get(i).getFinalSelectColumn()));
+            }
+        } else if (dialect.isPostgres()) {
+            // One subquery for the whole group, so all values come from the same matching row
+            String lateral = prefix + "_v";
+            StringBuilder values = new StringBuilder();
+            for (int i = 0; i < indexes.length; i++) {
+                if (i > 0) {
+                    values.append(", ");
+                }
+                values.append(column(aliases, group.get(i).getFinalSelectColumn())).append(" AS v").append(i + 1);
+                indexes[i] = select(lateral + ".v" + (i + 1));
+            }
+            joins.append(" LEFT JOIN LATERAL (SELECT ").append(values).append(" FROM ").append(whereTable).append(from)
+                    .append(" WHERE ").append(whereId).append(" = ").append(sourceId).append(" LIMIT 1) ")
+                    .append(lateral).append(" ON TRUE");
+        } else {
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = select("(SELECT " + column(aliases, group.get(i).getFinalSelectColumn()) +
+                        " FROM " + whereTable + from + " WHERE " + whereId + " = " + sourceId + " LIMIT 1)");
+            }
+        }
+        return indexes;
+    }
+
+    private int select(String expression) {
+        selected.add(expression);
+        return selected.size() - 1;
+    }
+
+    /**
+     * @return The number of values in each result row
+     */
+    int size() {
+        return selected.size();
+    }
+
+    String toSql() {
+        return toSql(null, null);
+    }
+
+    /**
+     * @param where A condition on the driving table (alias "s"), or null to read all rows
+     * @param orderBy A column of the driving table to sort the rows on, or null for any order
+     */
+    String toSql(String where, String orderBy) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (selected.isEmpty()) {
+            // Only constants: still one target row per source row
+            sql.append('1');
+        }
+        for (int i = 0; i < selected.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(selected.get(i));
+        }
+        sql.append(" FROM ").append(dialect.quote(table)).append(' ').append(DRIVING_ALIAS).append(joins);
+        if (where != null) {
+            sql.append(" WHERE ").append(where);
+        }
+        if (orderBy != null) {
+            sql.append(" ORDER BY ").append(DRIVING_ALIAS).append('.').append(dialect.quote(orderBy));
+        }
+        return sql.toString();
+    }
+
+    private String column(Map<String, String> aliases, SourceColumn column) {
+        return aliases.get(column.getTable().getName()) + "." + dialect.quote(column.getName());
+    }
+}
@@ -0,0 +1,350 @@
+package com.datamap.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * One hash partition of a {@link HashLookup} that did not fit its memory budget, kept in
+ * two memory-mapped temp files: the rows, appended as they are read, and an open
+ * addressing index over them built by {@link #finish()}. Probes read the mapped pages, so
+ * the operating system's page cache holds the hot part of the partition instead of the heap.
+ * <p>
+ * Rows are written as [record length][key length][UTF-8 key][values], each value a type
+ * tag followed by its data; index slots are (key hash, record offset + 1), 0 meaning
+ * empty. Each file is unlinked as soon as it is mapped, so its space returns once the
+ * mapping is garbage collected; until then, and while rows are still being appended, the
+ * files are on disk and {@link #close()} must be called to remove them.
+ */
+class SpillPartition {
+    private static final int MAX_BYTES = Integer.MAX_VALUE;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte BOOLEAN = 8;
+    private static final byte BIG_DECIMAL = 9;
+    private static final byte BIG_INTEGER = 10;
+    private static final byte DATE = 11;
+    private static final byte TIME = 12;
+    private static final byte TIMESTAMP = 13;
+    private static final byte BYTES = 14;
+    private static final byte SERIALIZED = 15;
+
+    private final int width;
+    private final File dataFile;
+    private File indexFile;
+    private DataOutputStream out;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(recordBuffer);
+    private int records; // Rows written, duplicate keys included
+    private int size; // Distinct keys
+    private ByteBuffer data;
+    private ByteBuffer index;
+    private int mask;
+
+    /**
+     * @param width The number of values per row
+     * @throws IOException If the temp file cannot be created
+     */
+    SpillPartition(int width) throws IOException {
+        this.width = width;
+        this.dataFile = File.createTempFile("datamap-lookup", ".rows");
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 64 * 1024));
+        } catch (IOException e) {
+            dataFile.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Append a row; of several rows with one key, the first added wins
+     *
+     * @throws IOException If the file cannot be written or would exceed 2 GB
+     */
+    void add(String key, Object[] row) throws IOException {
+        recordBuffer.reset();
+        writeBytes(record, key.getBytes(StandardCharsets.UTF_8));
+        for (Object value : row) {
+            writeValue(record, value);
+        }
+        // DataOutputStream.size() sticks at Integer.MAX_VALUE once it overflows
+        if ((long) out.size() + 4 + recordBuffer.size() >= MAX_BYTES) {
+            throw new IOException("A spilled lookup partition exceeds 2 GB; raise the lookup memory budget");
+        }
+        out.writeInt(recordBuffer.size());
+        recordBuffer.writeTo(out);
+        records++;
+    }
+
+    /**
+     * Stop appending, map the rows and index them; call once, before the first {@link #lookup(String)}
+     */
+    void finish() throws IOException {
+        out.close();
+        out = null;
+        data = map(dataFile, dataFile.length(), FileChannel.MapMode.READ_ONLY);
+
+        int capacity = 2;
+        while (capacity < records * 2L) {
+            capacity <<= 1;
+        }
+        if (capacity * 8L > MAX_BYTES) {
+            throw new IOException("A spilled lookup partition has too many rows; raise the lookup memory budget");
+        }
+        mask = capacity - 1;
+        indexFile = File.createTempFile("datamap-lookup", ".index");
+        index = map(indexFile, capacity * 8L, FileChannel.MapMode.READ_WRITE);
+
+        int offset = 0;
+        int end = data.limit();
+        while (offset < end) {
+            int keyLength = data.getInt(offset + 4);
+            int hash = hash(data, offset + 8, keyLength);
+            int slot = hash & mask;
+            while (index.getInt(slot * 8 + 4) != 0
+                    && !(index.getInt(slot * 8) == hash && sameKey(index.getInt(slot * 8 + 4) - 1, data, offset + 8, keyLength))) {
+                slot = (slot + 1) & mask;
+            }
+            if (index.getInt(slot * 8 + 4) == 0) {
+                index.putInt(slot * 8, hash);
+                index.putInt(slot * 8 + 4, offset + 1);
+                size++;
+            }
+            offset += 4 + data.getInt(offset);
+        }
+    }
+
+    /**
+     * @return The values of the first row added with key, or null if there is none
+     * @throws SQLException If a value cannot be decoded
+     */
+    Object[] lookup(String key) throws SQLException {
+        ByteBuffer bytes = ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+        int hash = hash(bytes, 0, bytes.limit());
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int offset = index.getInt(slot * 8 + 4) - 1;
+            if (offset < 0) {
+                return null;
+            }
+            if (index.getInt(slot * 8) == hash && sameKey(offset, bytes, 0, bytes.limit())) {
+                return read(offset);
+            }
+        }
+    }
+
+    /**
+     * Stop appending if still building, delete the files and drop the mappings; the
+     * partition must not be used afterwards
+     */
+    void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The file is deleted anyway
+            }
+            out = null;
+        }
+        data = null;
+        index = null;
+        dataFile.delete();
+        if (indexFile != null) {
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * @return The number of distinct keys, known after {@link #finish()}
+     */
+    int size() {
+        return size;
+    }
+
+    private boolean sameKey(int offset, ByteBuffer key, int keyOffset, int keyLength) {
+        if (data.getInt(offset + 4) != keyLength) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (data.get(offset + 8 + i) != key.get(keyOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object[] read(int offset) throws SQLException {
+        // A private cursor, as lookups run on several threads
+        ByteBuffer in = data.duplicate();
+        in.position(offset + 8 + data.getInt(offset + 4));
+        Object[] row = new Object[width];
+        for (int i = 0; i < width; i++) {
+            row[i] = readValue(in);
+        }
+        return row;
+    }
+
+    private static int hash(ByteBuffer bytes, int offset, int length) {
+        // FNV-1a, finished with a multiplicative mix so the low bits used for slots are spread
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (bytes.get(offset + i) & 0xFF)) * 0x01000193;
+        }
+        return hash * 0x9E3779B9;
+    }
+
+    private static ByteBuffer map(File file, long length, FileChannel.MapMode mode) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+             FileChannel channel = raf.getChannel()) {
+            if (mode != FileChannel.MapMode.READ_ONLY) {
+                raf.setLength(length);
+            }
+            buffer = channel.map(mode, 0, length);
+        }
+        // The mapping outlives the file's name; where that is not allowed, close() tries again
+        file.delete();
+        return buffer;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(out, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(((BigDecimal) value).scale());
+            writeBytes(out, ((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(out, ((BigInteger) value).toByteArray());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(DATE);
+            out.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(TIME);
+            out.writeLong(((Time) value).getTime());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            out.writeByte(SERIALIZED);
+            writeBytes(out, bytes.toByteArray());
+        } else {
+            // Written to the target as text anyway
+            out.writeByte(STRING);
+            writeBytes(out, value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Object readValue(ByteBuffer in) throws SQLException {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case INTEGER:
+                return in.getInt();
+            case LONG:
+                return in.getLong();
+            case DOUBLE:
+                return in.getDouble();
+            case FLOAT:
+                return in.getFloat();
+            case SHORT:
+                return in.getShort();
+            case BYTE:
+                return in.get();
+            case BOOLEAN:
+                return in.get() != 0;
+            case BIG_DECIMAL:
+                int scale = in.getInt();
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case DATE:
+                return new java.sql.Date(in.getLong());
+            case TIME:
+                return new Time(in.getLong());
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.getLong());
+                timestamp.setNanos(in.getInt());
+                return timestamp;
+            case BYTES:
+                return readBytes(in);
+            case SERIALIZED:
+                try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+                    return objects.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new SQLException("Cannot read a spilled lookup value: " + e.getMessage(), e);
+                }
+            default:
+                throw new SQLException("Corrupt spilled lookup value, tag " + tag);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,49 @@
+package com.datamap.engine;
+
+import com.datamap.model.DataSource;
+
+/**
+ * The few SQL differences between the supported databases that the engine has to care about
+ */
+public class SqlDialect {
+    private final String dbType;
+
+    private SqlDialect(String dbType) {
+        this.dbType = dbType;
+    }
+
+    /**
+     * @param dataSource The data source
+     * @return The dialect matching its dbType ("postgres" or "mysql"; anything else uses ANSI quoting)
+     */
+    public static SqlDialect of(DataSource dataSource) {
+        return new SqlDialect(dataSource.getDbType());
+    }
+
+    public boolean isPostgres() {
+        return "postgres".equals(dbType);
+    }
+
+    public boolean isMysql() {
+        return "mysql".equals(dbType);
+    }
+
+    /**
+     * Quote a table or column name. Names come from the database catalog, so they are quoted
+     * exactly as reported; a qualified name such as schema.table is quoted part by part.
+     *
+     * @param name The identifier
+     * @return The quoted identifier
+     */
+    public String quote(String name) {
+        String quote = isMysql() ? "`" : "\"";
+        StringBuilder quoted = new StringBuilder();
+        for (String part : name.split("\\.")) {
+            if (quoted.length() > 0) {
+                quoted.append('.');
+            }
+            quoted.append(quote).append(part.replace(quote, quote + quote)).append(quote);
+        }
+        return quoted.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.datamap.engine;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+
+/**
+ * Text form of the key and watermark values kept in the engine's state files: a type tag
+ * (long, decimal, date, timestamp or string) and the value as text, so the value binds
+ * back with the same JDBC type it was read with. java.time values, as MySQL Connector/J 8
+ * returns for DATETIME and DATE, are stored as the timestamp or date they stand for.
+ */
+class StoredValue {
+
+    static String typeOf(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return "long";
+        } else if (value instanceof Number) {
+            return "decimal";
+        } else if (value instanceof Date || value instanceof LocalDate) {
+            return "date";
+        } else if (value instanceof java.util.Date || value instanceof LocalDateTime ||
+                value instanceof OffsetDateTime) {
+            return "timestamp";
+        }
+        return "string";
+    }
+
+    static String text(Object value) {
+        if (value instanceof Number && !(value instanceof Long || value instanceof Integer ||
+                value instanceof Short || value instanceof Byte)) {
+            return new BigDecimal(value.toString()).toPlainString();
+        }
+        if (value instanceof java.util.Date && !(value instanceof Date) && !(value instanceof Timestamp)) {
+            return new Timestamp(((java.util.Date) value).getTime()).toString();
+        }
+        if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime) value).toString();
+        }
+        if (value instanceof OffsetDateTime) {
+            return Timestamp.from(((OffsetDateTime) value).toInstant()).toString();
+        }
+        if (value instanceof LocalDate) {
+            return Date.valueOf((LocalDate) value).toString();
+        }
+        return value.toString();
+    }
+
+    static Object parse(String type, String text) {
+        if (text == null) {
+            return null;
+        }
+        switch (type) {
+            case "long":
+                return Long.valueOf(text);
+            case "decimal":
+                return new BigDecimal(text);
+            case "date":
+                return Date.valueOf(text);
+            case "timestamp":
+                return Timestamp.valueOf(text);
+            default:
+                return text;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.datamap.engine;
+
+import com.datamap.model.DataSource;
+import com.datamap.model.SourceTable;
+import com.datamap.model.TargetTable;
+import com.datamap.util.DatabaseConnectionManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the target tables of several configurations, the independent ones at the same time.
+ * <p>
+ * A table waits for the tables it depends on, which are:
+ * <ul>
+ * <li>the tables its foreign keys refer to, in the same target data source</li>
+ * <li>target tables it reads as a source table, in the same data source</li>
+ * <li>an earlier configuration's load of the same target table</li>
+ * <li>the tables named by an ordering hint (see {@link #addOrderingHint})</li>
+ * </ul>
+ * A table whose dependency failed is skipped, and so are the tables depending on it. Ready
+ * tables start in configuration order, while fewer than the global limit are running and
+ * their source and target data sources are below their own limits.
+ * <p>
+ * Tables running at the same time split the connection pools between them: each sizes its
+ * partition workers to the pool divided by the number of tables that may use it at once.
+ */
+public class TableScheduler {
+    private final MappingEngine engine;
+    private final Map<String, DataSource> dataSources = new LinkedHashMap<>();
+    private int maxConcurrentTables = 4;
+    private final Map<String, Integer> dataSourceLimits = new HashMap<>();
+    private final List<String[]> orderingHints = new ArrayList<>();
+
+    /**
+     * One target table of one configuration
+     */
+    private static class Node {
+        final MappingModel model;
+        final TargetTable target;
+        final Set<String> dataSourceNames = new LinkedHashSet<>();
+        final Set<Node> dependsOn = new LinkedHashSet<>();
+        final List<Node> dependents = new ArrayList<>();
+        int waiting;
+        ExecutionReport.TableResult result;
+
+        Node(MappingModel model, TargetTable target) {
+            this.model = model;
+            this.target = target;
+            dataSourceNames.add(target.getSourceTable().getDataSourceName());
+            dataSourceNames.add(target.getDataSourceName());
+        }
+
+        void dependOn(Node node) {
+            if (node != this && dependsOn.add(node)) {
+                node.dependents.add(this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return target.getDataSourceName() + "." + target.getName();
+        }
+    }
+
+    /**
+     * @param engine Loads each table; its options apply to all of them
+     * @param dataSources The configured data sources, to read foreign keys from
+     */
+    public TableScheduler(MappingEngine engine, List<DataSource> dataSources) {
+        this.engine = engine;
+        for (DataSource dataSource : dataSources) {
+            this.dataSources.put(dataSource.getName(), dataSource);
+        }
+    }
+
+    public int getMaxConcurrentTables() {
+        return maxConcurrentTables;
+    }
+
+    /**
+     * @param maxConcurrentTables Tables loaded at the same time; each may run several
+     *                            partitions (see {@link EngineOptions#setParallelism(int)})
+     */
+    public void setMaxConcurrentTables(int maxConcurrentTables) {
+        if (maxConcurrentTables < 1) {
+            throw new IllegalArgumentException("Concurrent tables must be at least 1: " + maxConcurrentTables);
+        }
+        this.maxConcurrentTables = maxConcurrentTables;
+    }
+
+    /**
+     * @param dataSourceName A data source
+     * @param limit Tables reading from or writing to it at the same time
+     */
+    public void setDataSourceLimit(String dataSourceName, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit of " + dataSourceName + " must be at least 1: " + limit);
+        }
+        dataSourceLimits.put(dataSourceName, limit);
+    }
+
+    /**
+     * Make a target table wait for another one, for dependencies the database does not
+     * declare, such as a lookup reading what another table loads
+     *
+     * @param before The target table loaded first
+     * @param after The target table loaded once before has loaded successfully
+     */
+    public void addOrderingHint(String before, String after) {
+        orderingHints.add(new String[]{before, after});
+    }
+
+    /**
+     * Load every target table of the models
+     *
+     * @param models The configurations to run
+     * @return Rows and timings per target table, in configuration order
+     * @throws SQLException If the foreign keys of a target table cannot be read
+     * @throws ClassNotFoundException If a JDBC driver is missing
+     * @throws IllegalArgumentException If the dependencies form a cycle, or a hint names an unknown table
+     */
+    public ExecutionReport run(List<MappingModel> models) throws ClassNotFoundException, SQLException {
+        long start = System.nanoTime();
+        List<Node> nodes = plan(models);
+
+        ExecutionReport report = new ExecutionReport();
+        engine.getDictCache().startRun();
+        execute(nodes);
+        for (Node node : nodes) {
+            report.addTable(node.result);
+        }
+        report.setDictionaries(engine.getDictCache().getDictionaries());
+        report.setElapsedMillis((System.nanoTime() - start) / 1000000);
+        return report;
+    }
+
+    /**
+     * Build the dependency graph of the target tables
+     */
+    private List<Node> plan(List<MappingModel> models) throws ClassNotFoundException, SQLException {
+        List<Node> nodes = new ArrayList<>();
+        // Database table names are matched case-insensitively
+        Map<String, List<Node>> byTable = new HashMap<>();
+        for (MappingModel model : models) {
+            for (TargetTable target : model.getTargetTables().values()) {
+                Node node = new Node(model, target);
+                List<Node> loads = byTable.get(tableKey(target.getDataSourceName(), target.getName()));
+                if (loads == null) {
+                    loads = new ArrayList<>();
+                    byTable.put(tableKey(target.getDataSourceName(), target.getName()), loads);
+                } else {
+                    node.dependOn(loads.get(loads.size() - 1));
+                }
+                loads.add(node);
+                nodes.add(node);
+            }
+        }
+
+        for (Node node : nodes) {
+            for (SourceTable source : node.model.getSourceTables().values()) {
+                dependOnAll(node, byTable.get(tableKey(source.getDataSourceName(), source.getName())));
+            }
+        }
+
+        Map<String, List<Node>> byDataSource = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            List<Node> group = byDataSource.get(node.target.getDataSourceName());
+            if (group == null) {
+                group = new ArrayList<>();
+                byDataSource.put(node.target.getDataSourceName(), group);
+            }
+            group.add(node);
+        }
+        for (Map.Entry<String, List<Node>> group : byDataSource.entrySet()) {
+            DataSource dataSource = dataSources.get(group.getKey());
+            if (dataSource == null) {
+                throw new IllegalArgumentException("Unknown data source: " + group.getKey());
+            }
+            try (Connection conn = DatabaseConnectionManager.getConnection(dataSource)) {
+                Map<String, Set<String>> references = new HashMap<>();
+                for (Node node : group.getValue()) {
+                    Set<String> referenced = references.get(node.target.getName());
+                    if (referenced == null) {
+                        referenced = DatabaseConnectionManager.getReferencedTables(conn, dataSource, node.target.getName());
+                        references.put(node.target.getName(), referenced);
+                    }
+                    for (String table : referenced) {
+                        dependOnAll(node, byTable.get(tableKey(group.getKey(), table)));
+                    }
+                }
+            }
+        }
+
+        for (String[] hint : orderingHints) {
+            List<Node> before = named(nodes, hint[0]);
+            for (Node node : named(nodes, hint[1])) {
+                dependOnAll(node, before);
+            }
+        }
+
+        checkAcyclic(nodes);
+        return nodes;
+    }
+
+    private static void dependOnAll(Node node, List<Node> loads) {
+        if (loads != null) {
+            for (Node load : loads) {
+                // A later load of the node's own target already waits for it
+                if (!load.dependsOn.contains(node)) {
+                    node.dependOn(load);
+                }
+            }
+        }
+    }
+
+    private static List<Node> named(List<Node> nodes, String table) {
+        List<Node> named = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.target.getName().equalsIgnoreCase(table)) {
+                named.add(node);
+            }
+        }
+        if (named.isEmpty()) {
+            throw new IllegalArgumentException("Ordering hint names unknown target table " + table);
+        }
+        return named;
+    }
+
+    private static String tableKey(String dataSourceName, String table) {
+        return dataSourceName + "." + DatabaseConnectionManager.getCleanName(table).toLowerCase();
+    }
+
+    /**
+     * Remove the tables that can run in some order; whatever is left waits on itself
+     */
+    private static void checkAcyclic(List<Node> nodes) {
+        Map<Node, Integer> waiting = new HashMap<>();
+        Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : nodes) {
+            waiting.put(node, node.dependsOn.size());
+            if (node.dependsOn.isEmpty()) {
+                ready.add(node);
+            }
+        }
+        while (!ready.isEmpty()) {
+            Node node = ready.poll();
+            waiting.remove(node);
+            for (Node dependent : node.dependents) {
+                int count = waiting.get(dependent) - 1;
+                waiting.put(dependent, count);
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (!waiting.isEmpty()) {
+            throw new IllegalArgumentException("Target tables depend on each other in a cycle: " + waiting.keySet());
+        }
+    }
+
+    /**
+     * Run the tables as their dependencies complete, within the concurrency limits
+     */
+    private void execute(List<Node> nodes) {
+        final BlockingQueue<Node> finished = new LinkedBlockingQueue<>();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(maxConcurrentTables, Math.max(1, nodes.size())),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "table-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Node> ready = new ArrayList<>();
+            for (Node node : nodes) {
+                node.waiting = node.dependsOn.size();
+                if (node.waiting == 0) {
+                    ready.add(node);
+                }
+            }
+            Map<String, Integer> busy = new HashMap<>();
+            int running = 0;
+            int remaining = nodes.size();
+            while (remaining > 0) {
+                for (Iterator<Node> it = ready.iterator(); it.hasNext() && running < maxConcurrentTables; ) {
+                    final Node node = it.next();
+                    if (!fits(node, busy)) {
+                        continue;
+                    }
+                    it.remove();
+                    for (String name : node.dataSourceNames) {
+                        busy.put(name, count(busy, name) + 1);
+                    }
+                    running++;
+                    final int tablesPerPool = tablesPerPool(node, nodes.size());
+                    workers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                node.result = engine.runTable(node.model, node.target, tablesPerPool);
+                            } catch (Throwable t) {
+                                node.result = new ExecutionReport.TableResult(node.target.getName());
+                                node.result.setError(t.toString());
+                            } finally {
+                                finished.add(node);
+                            }
+                        }
+                    });
+                }
+
+                Node done;
+                try {
+                    done = finished.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    // Tables not yet done are reported as not run
+                    for (Node node : nodes) {
+                        if (node.result == null) {
+                            skip(node, "Interrupted");
+                        }
+                    }
+                    return;
+                }
+                running--;
+                remaining--;
+                for (String name : done.dataSourceNames) {
+                    busy.put(name, count(busy, name) - 1);
+                }
+                if (done.result.isSuccess()) {
+                    for (Node dependent : done.dependents) {
+                        if (--dependent.waiting == 0 && dependent.result == null) {
+                            ready.add(dependent);
+                        }
+                    }
+                } else {
+                    remaining -= skipDependents(done);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Whether a table can start without exceeding a data source limit
+     */
+    private boolean fits(Node node, Map<String, Integer> busy) {
+        for (String name : node.dataSourceNames) {
+            Integer limit = dataSourceLimits.get(name);
+            if (limit != null && count(busy, name) >= limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The most tables that may use one of a table's data sources at the same time
+     */
+    private int tablesPerPool(Node node, int tables) {
+        int sharing = 1;
+        for (String name : node.dataSourceNames) {
+            Integer limit = dataSourceLimits.get(name);
+            sharing = Math.max(sharing, limit != null ? Math.min(limit, maxConcurrentTables) : maxConcurrentTables);
+        }
+        return Math.min(sharing, tables);
+    }
+
+    private static int count(Map<String, Integer> busy, String name) {
+        Integer count = busy.get(name);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Skip every table depending on a failed one, directly or not
+     *
+     * @return The number of tables skipped
+     */
+    private static int skipDependents(Node failed) {
+        int skipped = 0;
+        for (Node dependent : failed.dependents) {
+            if (dependent.result == null) {
+                skip(dependent, "Skipped: " + failed + " failed");
+                skipped += 1 + skipDependents(dependent);
+            }
+        }
+        return skipped;
+    }
+
+    private static void skip(Node node, String reason) {
+        node.result = new ExecutionReport.TableResult(node.target.getName());
+        node.result.setError(reason);
+    }
+}
@@ -0,0 +1,142 @@
+package com.datamap.engine;
+
+import com.datamap.util.ConfigManager;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The last committed watermark of each incremental load, kept in
+ * ~/.data-mapping-wizard/watermarks.json. A load is identified by its source data source,
+ * source table and target table, since targets filled from the same source table advance
+ * independently.
+ */
+public class WatermarkStore {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Watermark {
+        private String column;
+        private String type;
+        private String value;
+        private long updatedAt;
+
+        public String getColumn() {
+            return column;
+        }
+
+        public void setColumn(String column) {
+            this.column = column;
+        }
+
+        /**
+         * @return How value is to be parsed: long, decimal, date, timestamp or string
+         */
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        public long getUpdatedAt() {
+            return updatedAt;
+        }
+
+        public void setUpdatedAt(long updatedAt) {
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private final File file;
+
+    public WatermarkStore() {
+        this(ConfigManager.getWatermarkFile());
+    }
+
+    public WatermarkStore(File file) {
+        this.file = file;
+    }
+
+    static String key(String dataSourceName, String sourceTable, String targetTable) {
+        return dataSourceName + "." + sourceTable + " -> " + targetTable;
+    }
+
+    /**
+     * @param key The load
+     * @param column The watermark column now configured
+     * @return The last committed watermark value, or null if the load has none yet or it was
+     * recorded for another column
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized Object get(String key, String column) throws IOException {
+        Watermark watermark = readAll().get(key);
+        if (watermark == null || !column.equals(watermark.getColumn())) {
+            return null;
+        }
+        return StoredValue.parse(watermark.getType(), watermark.getValue());
+    }
+
+    /**
+     * Record the watermark a load has committed up to. The file is replaced atomically.
+     *
+     * @param key The load
+     * @param column The watermark column
+     * @param value The highest watermark value loaded
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void put(String key, String column, Object value) throws IOException {
+        Watermark watermark = new Watermark();
+        watermark.setColumn(column);
+        watermark.setType(StoredValue.typeOf(value));
+        watermark.setValue(StoredValue.text(value));
+        watermark.setUpdatedAt(System.currentTimeMillis());
+
+        Map<String, Watermark> all = readAll();
+        all.put(key, watermark);
+        writeAll(all);
+    }
+
+    /**
+     * Forget a load's watermark, so its next run reads the whole source table. The file is
+     * replaced atomically.
+     */
+    public synchronized void remove(String key) throws IOException {
+        Map<String, Watermark> all = readAll();
+        if (all.remove(key) != null) {
+            writeAll(all);
+        }
+    }
+
+    private void writeAll(Map<String, Watermark> all) throws IOException {
+        ConfigManager.replaceFile(file, new ConfigManager.Contents() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                MAPPER.writerWithDefaultPrettyPrinter().writeValue(out, all);
+            }
+        });
+    }
+
+    private Map<String, Watermark> readAll() throws IOException {
+        if (!file.exists()) {
+            return new TreeMap<>();
+        }
+        return MAPPER.readValue(file, new TypeReference<TreeMap<String, Watermark>>() {
+        });
+    }
+}
@@ -16,6 +16,13 @@ public abstract class Column {
     public String getName() {
         return name;
     }
+
+    /**
+     * @return The database metadata of this column, or null if it has not been loaded
+     */
+    public ColumnMetadata getMetadata() {
+        return table.getColumnMetadata(name);
+    }
     
     @Override
     public String toString() {
@@ -0,0 +1,105 @@
+package com.datamap.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.sql.Types;
+
+/**
+ * Database metadata of a column: JDBC type, size, nullability and key/index membership
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ColumnMetadata {
+    private String name;
+    private int jdbcType = Types.OTHER; // java.sql.Types constant
+    private String typeName;
+    private int precision; // COLUMN_SIZE: length for strings, digits for numbers
+    private int scale;
+    private boolean nullable = true;
+    private boolean primaryKey;
+    private boolean unique; // The column alone is a primary key or unique index
+    private boolean indexed; // The column is part of at least one index
+
+    public ColumnMetadata() {
+    }
+
+    public ColumnMetadata(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getJdbcType() {
+        return jdbcType;
+    }
+
+    public void setJdbcType(int jdbcType) {
+        this.jdbcType = jdbcType;
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public void setTypeName(String typeName) {
+        this.typeName = typeName;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(int precision) {
+        this.precision = precision;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public void setScale(int scale) {
+        this.scale = scale;
+    }
+
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public void setNullable(boolean nullable) {
+        this.nullable = nullable;
+    }
+
+    public boolean isPrimaryKey() {
+        return primaryKey;
+    }
+
+    public void setPrimaryKey(boolean primaryKey) {
+        this.primaryKey = primaryKey;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public void setUnique(boolean unique) {
+        this.unique = unique;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + typeName + (nullable ? "" : " NOT NULL") + (primaryKey ? " PK" : "");
+    }
+}
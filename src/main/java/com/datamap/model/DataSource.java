@@ -11,6 +11,8 @@ public class DataSource {
     private String username;
     private String password;
     private String databaseName;
+    private String schemaName; // Optional default schema; null means all non-system schemas
+    private Integer fetchSize; // Rows per round trip when reading; null means the engine default
 
     public DataSource() {
     }
@@ -82,6 +84,22 @@ public class DataSource {
         this.databaseName = databaseName;
     }
     
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public Integer getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(Integer fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
     @Override
     public String toString() {
         return name + " (" + dbType + ")";
@@ -2,12 +2,15 @@ package com.datamap.model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Table {
     private String name;
     private List<String> columns = new ArrayList<>();
     private String dataSourceName; // Name of associated data source
+    private Map<String, ColumnMetadata> columnMetadata = new LinkedHashMap<>(); // Keyed by column name
 
     public String getDataSourceName() {
         return dataSourceName;
@@ -43,6 +46,42 @@ public class Table {
     public void removeColumn(String column) {
         columns.remove(column);
     }
+
+    /**
+     * @param column The column name
+     * @return The database metadata of the column, or null if it is not known
+     */
+    public ColumnMetadata getColumnMetadata(String column) {
+        return columnMetadata.get(column);
+    }
+
+    public Map<String, ColumnMetadata> getColumnMetadata() {
+        return columnMetadata;
+    }
+
+    /**
+     * Record the database metadata of columns; columns not in the list keep what they had
+     *
+     * @param metadata The column metadata, e.g. from CatalogService.getColumnMetadata
+     */
+    public void putColumnMetadata(List<ColumnMetadata> metadata) {
+        for (ColumnMetadata column : metadata) {
+            columnMetadata.put(column.getName(), column);
+        }
+    }
+
+    /**
+     * @return The names of the primary key columns whose metadata is known, in column order
+     */
+    public List<String> getPrimaryKeyColumns() {
+        List<String> keys = new ArrayList<>();
+        for (ColumnMetadata column : columnMetadata.values()) {
+            if (column.isPrimaryKey()) {
+                keys.add(column.getName());
+            }
+        }
+        return keys;
+    }
     
     @Override
     public String toString() {
@@ -53,6 +53,22 @@ public class ExternalConnection extends Mapping {
             joins.remove(index);
         }
     }
+
+    /**
+     * 关联签名：whereSelectTable、whereIdColumn、sourceIdColumn 与 LEFT JOIN 链都相同的映射，
+     * 只是查询的 finalSelectColumn 不同，可以合并为一次查询
+     *
+     * @return 除 finalSelectColumn 与目标列外，决定查询结果的全部要素
+     */
+    public String getJoinSignature() {
+        StringBuilder signature = new StringBuilder()
+                .append(whereSelectTable.getTable().getName()).append('.').append(whereIdColumn.getName())
+                .append('=').append(sourceIdColumn.getTable().getName()).append('.').append(sourceIdColumn.getName());
+        for (LeftJoin join : joins) {
+            signature.append(" LEFT JOIN ").append(join);
+        }
+        return signature.toString();
+    }
     
     @Override
     public String generateCode() {
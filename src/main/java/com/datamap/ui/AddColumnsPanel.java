@@ -2,7 +2,9 @@ package com.datamap.ui;
 
 import com.datamap.model.*;
 import com.datamap.util.AutoCompleteComboBox;
+import com.datamap.util.CatalogService;
 import com.datamap.util.DatabaseConnectionManager;
+import com.datamap.util.MetadataLoader;
 
 import javax.swing.*;
 import java.awt.*;
@@ -10,12 +12,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
 public class AddColumnsPanel extends JPanel {
     private DataMapWizard wizard;
@@ -305,74 +306,85 @@ public class AddColumnsPanel extends JPanel {
         if (tableOrViewName == null) return;
 
         // 获取不带前缀的表名/视图名
-        String cleanTableName = DatabaseConnectionManager.getCleanName(tableOrViewName);
+        final String cleanTableName = DatabaseConnectionManager.getCleanName(tableOrViewName);
 
         // 获取已存在的列
-        List<String> existingColumns = getExistingSourceColumns(cleanTableName);
-
-        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final List<String> existingColumns = getExistingSourceColumns(cleanTableName);
 
-        try {
-            // 关键修改：使用清理后的表名从wizard中获取SourceTable
-            SourceTable sourceTable = wizard.getSourceTables().get(cleanTableName);
+        // 关键修改：使用清理后的表名从wizard中获取SourceTable
+        SourceTable sourceTable = wizard.getSourceTables().get(cleanTableName);
 
-            // 如果找不到，则尝试查找是否存在带前缀的表名
-            if (sourceTable == null && !tableOrViewName.equals(cleanTableName)) {
-                // 这种情况下，wizard中可能存储了带前缀的视图名
-                sourceTable = wizard.getSourceTables().get(tableOrViewName);
-            }
+        // 如果找不到，则尝试查找是否存在带前缀的表名
+        if (sourceTable == null && !tableOrViewName.equals(cleanTableName)) {
+            // 这种情况下，wizard中可能存储了带前缀的视图名
+            sourceTable = wizard.getSourceTables().get(tableOrViewName);
+        }
 
-            if (sourceTable == null) {
-                // 如果仍然找不到，尝试遍历所有源表检查清理后的名称是否匹配
-                for (Map.Entry<String, SourceTable> entry : wizard.getSourceTables().entrySet()) {
-                    if (DatabaseConnectionManager.getCleanName(entry.getKey()).equals(cleanTableName)) {
-                        sourceTable = entry.getValue();
-                        break;
-                    }
+        if (sourceTable == null) {
+            // 如果仍然找不到，尝试遍历所有源表检查清理后的名称是否匹配
+            for (Map.Entry<String, SourceTable> entry : wizard.getSourceTables().entrySet()) {
+                if (DatabaseConnectionManager.getCleanName(entry.getKey()).equals(cleanTableName)) {
+                    sourceTable = entry.getValue();
+                    break;
                 }
             }
+        }
 
-            if (sourceTable == null) {
-                JOptionPane.showMessageDialog(this,
-                        "找不到表或视图: " + tableOrViewName,
-                        "错误", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+        if (sourceTable == null) {
+            JOptionPane.showMessageDialog(this,
+                    "找不到表或视图: " + tableOrViewName,
+                    "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
 
-            // 找到数据源
-            DataSource dataSource = findDataSourceForTable(sourceTable.getDataSourceName());
-            if (dataSource == null) return;
+        // 找到数据源
+        final DataSource dataSource = findDataSourceForTable(sourceTable.getDataSourceName());
+        if (dataSource == null) return;
+        final Table table = sourceTable.getTable();
 
-            // 获取列信息 - 使用正确的表/视图名称
-            Connection conn = DatabaseConnectionManager.getConnection(dataSource);
-            List<String> columnsFromDb = DatabaseConnectionManager.getColumns(conn, cleanTableName);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-            // 合并列信息
-            for (String column : columnsFromDb) {
-                if (!existingColumns.contains(column)) {
-                    existingColumns.add(column);
-                }
+        // 在后台线程获取列信息，快速切换表时只有最后一次请求会生效
+        MetadataLoader.submit("addColumns.source", new Callable<List<ColumnMetadata>>() {
+            @Override
+            public List<ColumnMetadata> call() throws Exception {
+                // 获取列信息（类型、主键、索引） - 使用正确的表/视图名称
+                return CatalogService.getColumnMetadata(dataSource, cleanTableName);
             }
+        }, new MetadataLoader.Callback<List<ColumnMetadata>>() {
+            @Override
+            public void onSuccess(List<ColumnMetadata> columnsFromDb) {
+                // 记录列的元数据，供代码生成和执行使用
+                table.putColumnMetadata(columnsFromDb);
+
+                // 合并列信息
+                for (ColumnMetadata column : columnsFromDb) {
+                    if (!existingColumns.contains(column.getName())) {
+                        existingColumns.add(column.getName());
+                    }
+                }
 
-            // 排序并更新UI
-            Collections.sort(existingColumns);
-            sourceColumnCombo.setAutoCompleteItems(existingColumns);
-            availableSourceColumns = new ArrayList<>(existingColumns);
-
-            if (conn != null) conn.close();
-        } catch (SQLException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(this,
-                    "获取列信息错误: " + e.getMessage(),
-                    "数据库错误", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-
-            if (!existingColumns.isEmpty()) {
+                // 排序并更新UI
+                Collections.sort(existingColumns);
                 sourceColumnCombo.setAutoCompleteItems(existingColumns);
                 availableSourceColumns = new ArrayList<>(existingColumns);
+                setCursor(Cursor.getDefaultCursor());
             }
-        } finally {
-            setCursor(Cursor.getDefaultCursor());
-        }
+
+            @Override
+            public void onError(Exception e) {
+                setCursor(Cursor.getDefaultCursor());
+                JOptionPane.showMessageDialog(AddColumnsPanel.this,
+                        "获取列信息错误: " + e.getMessage(),
+                        "数据库错误", JOptionPane.ERROR_MESSAGE);
+                e.printStackTrace();
+
+                if (!existingColumns.isEmpty()) {
+                    sourceColumnCombo.setAutoCompleteItems(existingColumns);
+                    availableSourceColumns = new ArrayList<>(existingColumns);
+                }
+            }
+        });
     }
 
     private void updateTargetColumns() {
@@ -381,72 +393,78 @@ public class AddColumnsPanel extends JPanel {
 
         // Target tables are always regular tables, not views
         // But ensure we have a clean name
-        String cleanTableName = DatabaseConnectionManager.getCleanName(tableName);
+        final String cleanTableName = DatabaseConnectionManager.getCleanName(tableName);
 
         // Clear previously stored available columns first
         availableTargetColumns.clear();
 
-        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        // Get the target table with its data source
+        TargetTable targetTable = wizard.getTargetTables().get(cleanTableName);
+        if (targetTable == null) return;
 
-        try {
-            // Get the target table with its data source
-            TargetTable targetTable = wizard.getTargetTables().get(cleanTableName);
-            if (targetTable == null) return;
+        // Find the data source this table belongs to
+        final DataSource dataSource = findDataSourceForTable(targetTable.getDataSourceName());
+        if (dataSource == null) return;
+        final Table table = targetTable.getTable();
 
-            // Find the data source this table belongs to
-            DataSource dataSource = findDataSourceForTable(targetTable.getDataSourceName());
-            if (dataSource == null) return;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-            // Get columns from database - ensure connection is established
-            Connection conn = DatabaseConnectionManager.getConnection(dataSource);
-            if (conn == null) {
-                throw new SQLException("Failed to establish database connection");
+        // Load in the background; a newer selection supersedes this request
+        MetadataLoader.submit("addColumns.target", new Callable<List<ColumnMetadata>>() {
+            @Override
+            public List<ColumnMetadata> call() throws Exception {
+                // Get columns with types and keys from the catalog snapshot
+                // (falls back to the database for unknown tables)
+                return CatalogService.getColumnMetadata(dataSource, cleanTableName);
             }
-
-            // Force direct database query to get all columns
-            List<String> columnsFromDb = DatabaseConnectionManager.getColumns(conn, cleanTableName);
-
-            // Also get any columns from loaded configuration
-            List<String> existingColumns = getExistingTargetColumns(cleanTableName);
-
-            // Merge columns from both sources
-            for (String column : columnsFromDb) {
-                if (!availableTargetColumns.contains(column)) {
-                    availableTargetColumns.add(column);
+        }, new MetadataLoader.Callback<List<ColumnMetadata>>() {
+            @Override
+            public void onSuccess(List<ColumnMetadata> columnsFromDb) {
+                // Keep the metadata on the table for code generation and execution
+                table.putColumnMetadata(columnsFromDb);
+
+                // Also get any columns from loaded configuration
+                List<String> existingColumns = getExistingTargetColumns(cleanTableName);
+
+                // Merge columns from both sources
+                List<String> columns = new ArrayList<>();
+                for (ColumnMetadata column : columnsFromDb) {
+                    if (!columns.contains(column.getName())) {
+                        columns.add(column.getName());
+                    }
                 }
-            }
 
-            for (String column : existingColumns) {
-                if (!availableTargetColumns.contains(column)) {
-                    availableTargetColumns.add(column);
+                for (String column : existingColumns) {
+                    if (!columns.contains(column)) {
+                        columns.add(column);
+                    }
                 }
-            }
-
-            // Sort columns alphabetically
-            Collections.sort(availableTargetColumns);
 
-            // Update the autocomplete items with all available columns
-            targetColumnCombo.setAutoCompleteItems(availableTargetColumns);
+                // Sort columns alphabetically
+                Collections.sort(columns);
+                availableTargetColumns = columns;
 
-            // Close connection when done
-            if (conn != null && !conn.isClosed()) {
-                conn.close();
+                // Update the autocomplete items with all available columns
+                targetColumnCombo.setAutoCompleteItems(availableTargetColumns);
+                setCursor(Cursor.getDefaultCursor());
             }
-        } catch (SQLException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(this,
-                    "Error retrieving target columns: " + e.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
 
-            // If database access fails, fall back to existing columns from config
-            List<String> existingColumns = getExistingTargetColumns(cleanTableName);
-            if (!existingColumns.isEmpty()) {
-                availableTargetColumns = new ArrayList<>(existingColumns);
-                targetColumnCombo.setAutoCompleteItems(existingColumns);
+            @Override
+            public void onError(Exception e) {
+                setCursor(Cursor.getDefaultCursor());
+                JOptionPane.showMessageDialog(AddColumnsPanel.this,
+                        "Error retrieving target columns: " + e.getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
+                e.printStackTrace();
+
+                // If database access fails, fall back to existing columns from config
+                List<String> existingColumns = getExistingTargetColumns(cleanTableName);
+                if (!existingColumns.isEmpty()) {
+                    availableTargetColumns = new ArrayList<>(existingColumns);
+                    targetColumnCombo.setAutoCompleteItems(existingColumns);
+                }
             }
-        } finally {
-            setCursor(Cursor.getDefaultCursor());
-        }
+        });
     }
 
     /**
@@ -2,21 +2,27 @@ package com.datamap.ui;
 
 import com.datamap.model.DataSource;
 import com.datamap.util.AutoCompleteComboBox;
+import com.datamap.util.CatalogService;
 import com.datamap.util.DatabaseConnectionManager;
+import com.datamap.util.MetadataLoader;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class AddTablesPanel extends JPanel {
+    // Names fetched per "Load More"; large catalogs are never listed in one go
+    private static final int PAGE_SIZE = 500;
+    private static final String ALL_SCHEMAS = "(all schemas)";
+
     private DataMapWizard wizard;
     private DefaultListModel<String> sourceTablesModel;
     private DefaultListModel<String> targetTablesModel;
@@ -33,6 +39,9 @@ public class AddTablesPanel extends JPanel {
     private JCheckBox showTablesCheckBox;
     private JCheckBox showViewsCheckBox;
 
+    private TablePager sourcePager;
+    private TablePager targetPager;
+
     public AddTablesPanel(DataMapWizard wizard) {
         this.wizard = wizard;
         setLayout(new BorderLayout());
@@ -50,7 +59,7 @@ public class AddTablesPanel extends JPanel {
         JPanel sourcePanel = new JPanel(new BorderLayout());
         sourcePanel.setBorder(BorderFactory.createTitledBorder("Source Tables & Views"));
 
-        JPanel sourceInputPanel = new JPanel(new GridLayout(5, 1, 5, 5));
+        JPanel sourceInputPanel = new JPanel(new GridLayout(6, 1, 5, 5));
         sourceInputPanel.add(new JLabel("Data Source:"));
         sourceDataSourceCombo = new JComboBox<>();
         sourceDataSourceCombo.setRenderer(new DefaultListCellRenderer() {
@@ -82,25 +91,38 @@ public class AddTablesPanel extends JPanel {
         showTablesCheckBox.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                updateSourceTables();
+                sourcePager.reload();
             }
         });
 
         showViewsCheckBox.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                updateSourceTables();
+                sourcePager.reload();
+            }
+        });
+
+        // Reload the cached catalog, e.g. after tables were created in the database
+        JButton refreshMetadataButton = new JButton("Refresh Metadata");
+        refreshMetadataButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refreshMetadata();
             }
         });
 
         sourceFilterPanel.add(showTablesCheckBox);
         sourceFilterPanel.add(showViewsCheckBox);
+        sourceFilterPanel.add(refreshMetadataButton);
         sourceInputPanel.add(sourceFilterPanel);
 
         sourceInputPanel.add(new JLabel("Source Table/View:"));
         sourceTableComboBox = new AutoCompleteComboBox();
         sourceInputPanel.add(sourceTableComboBox);
 
+        sourcePager = new TablePager("addTables.source", sourceDataSourceCombo, sourceTableComboBox, true);
+        sourceInputPanel.add(sourcePager.createControls());
+
         JButton addSourceButton = new JButton("Add Source Table/View");
         addSourceButton.addActionListener(new ActionListener() {
             @Override
@@ -132,7 +154,7 @@ public class AddTablesPanel extends JPanel {
         JPanel targetPanel = new JPanel(new BorderLayout());
         targetPanel.setBorder(BorderFactory.createTitledBorder("Target Tables"));
 
-        JPanel targetInputPanel = new JPanel(new GridLayout(6, 1, 5, 5));
+        JPanel targetInputPanel = new JPanel(new GridLayout(7, 1, 5, 5));
         targetInputPanel.add(new JLabel("Based on Source Table/View:"));
         sourceTableForTargetCombo = new AutoCompleteComboBox();
         sourceTableForTargetCombo.setName("sourceTableForTargetCombo"); // for refreshing
@@ -165,6 +187,9 @@ public class AddTablesPanel extends JPanel {
         targetTableComboBox = new AutoCompleteComboBox();
         targetInputPanel.add(targetTableComboBox);
 
+        targetPager = new TablePager("addTables.target", targetDataSourceCombo, targetTableComboBox, false);
+        targetInputPanel.add(targetPager.createControls());
+
         JButton addTargetButton = new JButton("Add Target Table");
         addTargetButton.addActionListener(new ActionListener() {
             @Override
@@ -224,71 +249,195 @@ public class AddTablesPanel extends JPanel {
         }
     }
 
+    private void refreshMetadata() {
+        DataSource sourceDS = (DataSource) sourceDataSourceCombo.getSelectedItem();
+        DataSource targetDS = (DataSource) targetDataSourceCombo.getSelectedItem();
+        if (sourceDS != null) {
+            CatalogService.invalidate(sourceDS);
+        }
+        if (targetDS != null) {
+            CatalogService.invalidate(targetDS);
+        }
+        updateSourceTables();
+        updateTargetTables();
+    }
+
     private void updateSourceTables() {
-        DataSource selectedDS = (DataSource) sourceDataSourceCombo.getSelectedItem();
-        if (selectedDS == null) return;
+        sourcePager.dataSourceChanged();
+    }
 
-        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+    private void updateTargetTables() {
+        targetPager.dataSourceChanged();
+    }
 
-        try {
-            Connection conn = DatabaseConnectionManager.getConnection(selectedDS);
+    /**
+     * Pages the table names of one data source into a table combo box. The schema and the
+     * name filter are sent to the database, and names arrive PAGE_SIZE at a time, so picking
+     * a table never needs the whole catalog.
+     */
+    private class TablePager {
+        private final String key;
+        private final JComboBox<DataSource> dataSourceCombo;
+        private final AutoCompleteComboBox tableCombo;
+        private final boolean viewsAllowed;
+
+        private final JComboBox<String> schemaCombo = new JComboBox<>();
+        private final JTextField nameFilterField = new JTextField(10);
+        private final JButton loadMoreButton = new JButton("Load More");
+
+        private final List<String> loadedNames = new ArrayList<>();
+        private boolean populatingSchemas;
+
+        TablePager(String key, JComboBox<DataSource> dataSourceCombo, AutoCompleteComboBox tableCombo,
+                   boolean viewsAllowed) {
+            this.key = key;
+            this.dataSourceCombo = dataSourceCombo;
+            this.tableCombo = tableCombo;
+            this.viewsAllowed = viewsAllowed;
+        }
 
-            // Get both tables and views
-            List<String> allObjects = DatabaseConnectionManager.getTablesAndViews(conn);
+        JPanel createControls() {
+            JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
 
-            // Apply filters based on checkboxes
-            List<String> filteredObjects = new ArrayList<>();
-            for (String obj : allObjects) {
-                boolean isView = obj.startsWith("VIEW: ");
-                if ((isView && showViewsCheckBox.isSelected()) ||
-                        (!isView && showTablesCheckBox.isSelected())) {
-                    filteredObjects.add(obj);
+            schemaCombo.addItem(ALL_SCHEMAS);
+            schemaCombo.addItemListener(new ItemListener() {
+                @Override
+                public void itemStateChanged(ItemEvent e) {
+                    if (e.getStateChange() == ItemEvent.SELECTED && !populatingSchemas) {
+                        reload();
+                    }
+                }
+            });
+
+            // Every keystroke supersedes the previous query, so only the last one runs
+            nameFilterField.setToolTipText("Part of the name, case-insensitive");
+            nameFilterField.getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    reload();
                 }
-            }
 
-            // Sort tables and views alphabetically
-            Collections.sort(filteredObjects);
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    reload();
+                }
 
-            // Update the autocomplete items
-            sourceTableComboBox.setAutoCompleteItems(filteredObjects);
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                    reload();
+                }
+            });
 
-            if (conn != null) conn.close();
-        } catch (SQLException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(this,
-                    "Error retrieving tables and views: " + e.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-        } finally {
-            setCursor(Cursor.getDefaultCursor());
+            loadMoreButton.setEnabled(false);
+            loadMoreButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    loadPage(loadedNames.size());
+                }
+            });
+
+            panel.add(new JLabel("Schema:"));
+            panel.add(schemaCombo);
+            panel.add(new JLabel("Filter:"));
+            panel.add(nameFilterField);
+            panel.add(loadMoreButton);
+            return panel;
         }
-    }
 
-    private void updateTargetTables() {
-        DataSource selectedDS = (DataSource) targetDataSourceCombo.getSelectedItem();
-        if (selectedDS == null) return;
+        /**
+         * Load the schemas of the selected data source, then the first page of names
+         */
+        void dataSourceChanged() {
+            final DataSource selectedDS = (DataSource) dataSourceCombo.getSelectedItem();
+            if (selectedDS == null) return;
+
+            MetadataLoader.submit(key + ".schemas", new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return CatalogService.getSchemas(selectedDS);
+                }
+            }, new MetadataLoader.Callback<List<String>>() {
+                @Override
+                public void onSuccess(List<String> schemas) {
+                    populatingSchemas = true;
+                    schemaCombo.removeAllItems();
+                    schemaCombo.addItem(ALL_SCHEMAS);
+                    for (String schema : schemas) {
+                        schemaCombo.addItem(schema);
+                    }
+                    // Start in the schema configured on the data source, if any
+                    if (selectedDS.getSchemaName() != null && schemas.contains(selectedDS.getSchemaName())) {
+                        schemaCombo.setSelectedItem(selectedDS.getSchemaName());
+                    }
+                    schemaCombo.setEnabled(!schemas.isEmpty());
+                    populatingSchemas = false;
+                    reload();
+                }
 
-        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+                @Override
+                public void onError(Exception e) {
+                    JOptionPane.showMessageDialog(AddTablesPanel.this,
+                            "Error retrieving schemas: " + e.getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        /**
+         * Start over with the first page, e.g. after the schema or a filter changed
+         */
+        void reload() {
+            loadedNames.clear();
+            loadPage(0);
+        }
 
-        try {
-            Connection conn = DatabaseConnectionManager.getConnection(selectedDS);
+        private void loadPage(final int offset) {
+            final DataSource selectedDS = (DataSource) dataSourceCombo.getSelectedItem();
+            if (selectedDS == null) return;
 
+            // Read the filter state on the EDT; the names themselves are loaded in the background
+            final String schema = ALL_SCHEMAS.equals(schemaCombo.getSelectedItem()) ? null
+                    : (String) schemaCombo.getSelectedItem();
+            final String nameFilter = nameFilterField.getText().trim();
+            final boolean includeTables = !viewsAllowed || showTablesCheckBox.isSelected();
             // For targets, we only want tables (not views)
-            List<String> tables = DatabaseConnectionManager.getTables(conn);
+            final boolean includeViews = viewsAllowed && showViewsCheckBox.isSelected();
 
-            // Sort tables alphabetically
-            Collections.sort(tables);
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            loadMoreButton.setEnabled(false);
 
-            // Update the autocomplete items
-            targetTableComboBox.setAutoCompleteItems(tables);
+            MetadataLoader.submit(key, new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    // One extra row tells whether another page exists
+                    return CatalogService.getTablePage(selectedDS, schema, nameFilter,
+                            includeTables, includeViews, offset, PAGE_SIZE + 1);
+                }
+            }, new MetadataLoader.Callback<List<String>>() {
+                @Override
+                public void onSuccess(List<String> names) {
+                    boolean hasMore = names.size() > PAGE_SIZE;
+                    if (offset == 0) {
+                        loadedNames.clear();
+                    }
+                    loadedNames.addAll(hasMore ? names.subList(0, PAGE_SIZE) : names);
+
+                    // Update the autocomplete items
+                    tableCombo.setAutoCompleteItems(loadedNames);
+                    loadMoreButton.setEnabled(hasMore);
+                    setCursor(Cursor.getDefaultCursor());
+                }
 
-            if (conn != null) conn.close();
-        } catch (SQLException | ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(this,
-                    "Error retrieving tables: " + e.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-        } finally {
-            setCursor(Cursor.getDefaultCursor());
+                @Override
+                public void onError(Exception e) {
+                    setCursor(Cursor.getDefaultCursor());
+                    JOptionPane.showMessageDialog(AddTablesPanel.this,
+                            "Error retrieving tables and views: " + e.getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                    e.printStackTrace();
+                }
+            });
         }
     }
 
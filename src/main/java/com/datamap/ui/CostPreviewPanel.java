@@ -0,0 +1,92 @@
+package com.datamap.ui;
+
+import com.datamap.engine.CostPreview;
+import com.datamap.engine.EngineOptions;
+import com.datamap.engine.MappingEngine;
+import com.datamap.engine.MappingModel;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+
+/**
+ * Shows what the source databases' planners expect a run of the current mappings to cost,
+ * from EXPLAIN of the queries the engine would issue, so bad plans are caught before the
+ * mapping runs against production
+ */
+public class CostPreviewPanel extends JPanel {
+    private DataMapWizard wizard;
+    private JTextArea previewArea;
+    private JButton explainButton;
+
+    public CostPreviewPanel(DataMapWizard wizard) {
+        this.wizard = wizard;
+        setLayout(new BorderLayout(10, 10));
+
+        initComponents();
+    }
+
+    private void initComponents() {
+        JPanel contentPanel = new JPanel(new BorderLayout(10, 10));
+        contentPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        previewArea = new JTextArea(20, 60);
+        previewArea.setEditable(false);
+        previewArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        JScrollPane scrollPane = new JScrollPane(previewArea);
+        scrollPane.setBorder(BorderFactory.createTitledBorder("Estimated Cost (EXPLAIN)"));
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        explainButton = new JButton("Explain Queries");
+        explainButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                explain();
+            }
+        });
+        buttonPanel.add(explainButton);
+        buttonPanel.add(new JLabel("Estimates only: the queries are planned, not run"));
+
+        contentPanel.add(scrollPane, BorderLayout.CENTER);
+        contentPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        add(contentPanel, BorderLayout.CENTER);
+    }
+
+    private void explain() {
+        if (wizard.getTargetTables().isEmpty()) {
+            previewArea.setText("There are no target tables to estimate.");
+            return;
+        }
+        final MappingModel model = MappingModel.of(wizard.getSourceTables(), wizard.getTargetTables(),
+                wizard.getMappings());
+        final MappingEngine engine = new MappingEngine(new ArrayList<>(wizard.getConfiguredDataSources()),
+                new EngineOptions());
+
+        explainButton.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        previewArea.setText("Explaining...");
+
+        new SwingWorker<CostPreview, Void>() {
+            @Override
+            protected CostPreview doInBackground() {
+                return engine.explain(model);
+            }
+
+            @Override
+            protected void done() {
+                explainButton.setEnabled(true);
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    previewArea.setText(get().toString());
+                    previewArea.setCaretPosition(0);
+                } catch (Exception ex) {
+                    previewArea.setText("Error explaining mapping: " + ex.getMessage());
+                }
+            }
+        }.execute();
+    }
+}
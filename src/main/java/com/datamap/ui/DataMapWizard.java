@@ -4,11 +4,14 @@ import com.datamap.model.*;
 import com.datamap.model.mapping.*;
 import com.datamap.util.Code;
 import com.datamap.util.ConfigManager;
+import com.datamap.util.MetadataPrefetcher;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -39,6 +42,7 @@ public class DataMapWizard extends JFrame {
     private ConstantMappingPanel constantMappingPanel;
     private ExternalConnectionPanel externalConnectionPanel;
     private GenerateCodePanel generateCodePanel;
+    private CostPreviewPanel costPreviewPanel;
 
     // File tree panel
     private FileTreePanel fileTreePanel;
@@ -49,6 +53,7 @@ public class DataMapWizard extends JFrame {
     // 工作目录相关组件
     private JLabel workingDirLabel;
     private JButton selectWorkingDirButton;
+    private JLabel metadataStatusLabel;
 
     public DataMapWizard() {
         setTitle("Data Mapping Wizard");
@@ -62,6 +67,42 @@ public class DataMapWizard extends JFrame {
         initPanels();
         initMainLayout();
         initNavigationPanel();
+
+        // 可选：启动时并行预加载所有数据源的元数据
+        if (ConfigManager.isPrefetchMetadata()) {
+            startMetadataPrefetch();
+        }
+    }
+
+    /**
+     * Warm the catalog of every configured data source in the background and show the
+     * progress next to the working directory
+     */
+    private void startMetadataPrefetch() {
+        final MetadataPrefetcher prefetcher = new MetadataPrefetcher(new MetadataPrefetcher.Listener() {
+            @Override
+            public void statusChanged(Map<String, MetadataPrefetcher.State> status) {
+                metadataStatusLabel.setText(MetadataPrefetcher.summarize(status));
+            }
+        });
+        metadataStatusLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Map<String, String> errors = prefetcher.getErrors();
+                if (errors.isEmpty()) {
+                    return;
+                }
+                StringBuilder message = new StringBuilder();
+                for (Map.Entry<String, String> entry : errors.entrySet()) {
+                    message.append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+                }
+                JOptionPane.showMessageDialog(DataMapWizard.this, message.toString(),
+                        "Metadata Prefetch", JOptionPane.WARNING_MESSAGE);
+            }
+        });
+        metadataStatusLabel.setToolTipText("Click for details on failed data sources");
+        metadataStatusLabel.setVisible(true);
+        prefetcher.start(new ArrayList<>(databaseConfigPanel.getDataSources()));
     }
 
     private void initPanels() {
@@ -73,6 +114,7 @@ public class DataMapWizard extends JFrame {
         constantMappingPanel = new ConstantMappingPanel(this);
         externalConnectionPanel = new ExternalConnectionPanel(this);
         generateCodePanel = new GenerateCodePanel(this);
+        costPreviewPanel = new CostPreviewPanel(this);
 
         wizardPanel.add(databaseConfigPanel, "databaseConfig");
         wizardPanel.add(addTablesPanel, "addTables");
@@ -81,7 +123,11 @@ public class DataMapWizard extends JFrame {
         wizardPanel.add(dictMappingPanel, "dictMapping");
         wizardPanel.add(constantMappingPanel, "constantMapping");
         wizardPanel.add(externalConnectionPanel, "externalConnection");
-        wizardPanel.add(generateCodePanel, "generateCode");
+        // 代码生成与执行代价预估并列显示
+        JTabbedPane generateTabs = new JTabbedPane();
+        generateTabs.addTab("Code", generateCodePanel);
+        generateTabs.addTab("Cost Preview", costPreviewPanel);
+        wizardPanel.add(generateTabs, "generateCode");
 
         cardLayout.show(wizardPanel, "databaseConfig");
 
@@ -160,6 +206,11 @@ public class DataMapWizard extends JFrame {
         centerPanel.add(workingDirLabel);
         centerPanel.add(selectWorkingDirButton);
 
+        // 元数据预加载状态，仅在启用预加载时显示
+        metadataStatusLabel = new JLabel();
+        metadataStatusLabel.setVisible(false);
+        centerPanel.add(metadataStatusLabel);
+
         // 初始化工作目录显示
         updateWorkingDirectoryLabel();
 
@@ -688,6 +739,13 @@ public class DataMapWizard extends JFrame {
         return dataSources;
     }
 
+    /**
+     * @return The data sources as currently configured in step 0, even before "Next" was pressed
+     */
+    public List<DataSource> getConfiguredDataSources() {
+        return databaseConfigPanel.getDataSources();
+    }
+
     public String generateCode(){
         return Code.generateCode(sourceTables, targetTables, sourceColumns, targetColumns, mappings);
     }
@@ -4,6 +4,7 @@ import com.datamap.model.DataSource;
 import com.datamap.util.ConfigManager;
 import com.datamap.util.DataSourceConfig;
 import com.datamap.util.DatabaseConnectionManager;
+import com.datamap.util.MetadataLoader;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -17,6 +18,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class DatabaseConfigPanel extends JPanel {
     private DataMapWizard wizard;
@@ -30,6 +32,8 @@ public class DatabaseConfigPanel extends JPanel {
     private JTextField usernameField;
     private JPasswordField passwordField;
     private JTextField databaseNameField;
+    private JTextField schemaNameField;
+    private JTextField fetchSizeField;
     
     private List<DataSource> dataSources;
     
@@ -84,7 +88,7 @@ public class DatabaseConfigPanel extends JPanel {
         JPanel rightPanel = new JPanel(new BorderLayout());
         rightPanel.setBorder(BorderFactory.createTitledBorder("Data Source Configuration"));
         
-        JPanel formPanel = new JPanel(new GridLayout(7, 2, 10, 10));
+        JPanel formPanel = new JPanel(new GridLayout(9, 2, 10, 10));
         
         formPanel.add(new JLabel("Name:"));
         nameField = new JTextField(20);
@@ -115,6 +119,16 @@ public class DatabaseConfigPanel extends JPanel {
         jdbcUrlField = new JTextField(20);
         formPanel.add(jdbcUrlField);
         
+        formPanel.add(new JLabel("Schema (optional):"));
+        schemaNameField = new JTextField(20);
+        schemaNameField.setToolTipText("Limit table discovery to this schema; leave empty for all schemas");
+        formPanel.add(schemaNameField);
+
+        formPanel.add(new JLabel("Fetch Size (optional):"));
+        fetchSizeField = new JTextField(20);
+        fetchSizeField.setToolTipText("Rows fetched per round trip when running mappings; leave empty for the default");
+        formPanel.add(fetchSizeField);
+
         formPanel.add(new JLabel("Username:"));
         usernameField = new JTextField(20);
         formPanel.add(usernameField);
@@ -132,6 +146,18 @@ public class DatabaseConfigPanel extends JPanel {
         JButton testButton = new JButton("Test Connection");
         testButton.addActionListener(e -> testConnection());
         
+        // Takes effect on the next start
+        JCheckBox prefetchCheckBox = new JCheckBox("Prefetch metadata at startup", ConfigManager.isPrefetchMetadata());
+        prefetchCheckBox.addActionListener(e -> {
+            try {
+                ConfigManager.setPrefetchMetadata(prefetchCheckBox.isSelected());
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, "Failed to save setting: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+
+        rightButtonPanel.add(prefetchCheckBox);
         rightButtonPanel.add(testButton);
         rightButtonPanel.add(saveButton);
         rightPanel.add(rightButtonPanel, BorderLayout.SOUTH);
@@ -184,6 +210,8 @@ public class DatabaseConfigPanel extends JPanel {
             usernameField.setText(ds.getUsername());
             passwordField.setText(ds.getPassword());
             databaseNameField.setText(ds.getDatabaseName());
+            schemaNameField.setText(ds.getSchemaName());
+            fetchSizeField.setText(ds.getFetchSize() == null ? "" : String.valueOf(ds.getFetchSize()));
         } else {
             clearForm();
         }
@@ -197,6 +225,8 @@ public class DatabaseConfigPanel extends JPanel {
         usernameField.setText("");
         passwordField.setText("");
         databaseNameField.setText("");
+        schemaNameField.setText("");
+        fetchSizeField.setText("");
     }
     
     private void addNewDataSource() {
@@ -232,6 +262,15 @@ public class DatabaseConfigPanel extends JPanel {
         int index = dataSourcesList.getSelectedIndex();
         if (index >= 0 && index < dataSources.size()) {
             DataSource ds = dataSources.get(index);
+
+            Integer fetchSize;
+            try {
+                fetchSize = getFetchSizeInput();
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, "Fetch size must be a positive whole number",
+                        "Invalid Input", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             
             ds.setName(nameField.getText());
             ds.setDbType((String) dbTypeCombo.getSelectedItem());
@@ -240,6 +279,8 @@ public class DatabaseConfigPanel extends JPanel {
             ds.setUsername(usernameField.getText());
             ds.setPassword(new String(passwordField.getPassword()));
             ds.setDatabaseName(databaseNameField.getText());
+            ds.setSchemaName(getSchemaNameInput());
+            ds.setFetchSize(fetchSize);
             
             updateDataSourcesModel();
             dataSourcesList.setSelectedIndex(index);
@@ -252,6 +293,23 @@ public class DatabaseConfigPanel extends JPanel {
         }
     }
     
+    private Integer getFetchSizeInput() {
+        String text = fetchSizeField.getText().trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        int fetchSize = Integer.parseInt(text);
+        if (fetchSize <= 0) {
+            throw new NumberFormatException(text);
+        }
+        return fetchSize;
+    }
+
+    private String getSchemaNameInput() {
+        String schema = schemaNameField.getText().trim();
+        return schema.isEmpty() ? null : schema;
+    }
+    
     private void updateFieldsForDbType() {
         String dbType = (String) dbTypeCombo.getSelectedItem();
         String dbName = databaseNameField.getText();
@@ -272,36 +330,54 @@ public class DatabaseConfigPanel extends JPanel {
     
     private void testConnection() {
         // Create a temporary data source with current form values
-        DataSource ds = new DataSource();
+        final DataSource ds = new DataSource();
         ds.setName(nameField.getText());
         ds.setDbType((String) dbTypeCombo.getSelectedItem());
         ds.setJdbcDriver(jdbcDriverField.getText());
         ds.setJdbcUrl(jdbcUrlField.getText());
         ds.setUsername(usernameField.getText());
         ds.setPassword(new String(passwordField.getPassword()));
+        ds.setSchemaName(getSchemaNameInput());
         
-        try {
-            boolean success = DatabaseConnectionManager.testConnection(ds);
-            if (success) {
-                JOptionPane.showMessageDialog(this, 
-                    "Connection successful!", "Test Connection", 
-                    JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                    "Connection failed.", "Test Connection", 
-                    JOptionPane.ERROR_MESSAGE);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        // Connect in the background so a slow or unreachable server does not freeze the UI
+        MetadataLoader.submit("databaseConfig.test", new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return DatabaseConnectionManager.testConnection(ds);
             }
-        } catch (ClassNotFoundException ex) {
-            JOptionPane.showMessageDialog(this, 
-                "JDBC Driver not found: " + ex.getMessage(), 
-                "Test Connection", JOptionPane.ERROR_MESSAGE);
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, 
-                "SQL Exception: " + ex.getMessage(), 
-                "Test Connection", JOptionPane.ERROR_MESSAGE);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        }, new MetadataLoader.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean success) {
+                setCursor(Cursor.getDefaultCursor());
+                if (success) {
+                    JOptionPane.showMessageDialog(DatabaseConfigPanel.this,
+                        "Connection successful!\n" + DatabaseConnectionManager.getPool(ds).getStats(), "Test Connection",
+                        JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(DatabaseConfigPanel.this,
+                        "Connection failed.", "Test Connection",
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }
+
+            @Override
+            public void onError(Exception ex) {
+                setCursor(Cursor.getDefaultCursor());
+                if (ex instanceof ClassNotFoundException) {
+                    JOptionPane.showMessageDialog(DatabaseConfigPanel.this,
+                        "JDBC Driver not found: " + ex.getMessage(),
+                        "Test Connection", JOptionPane.ERROR_MESSAGE);
+                } else if (ex instanceof SQLException) {
+                    JOptionPane.showMessageDialog(DatabaseConfigPanel.this,
+                        "SQL Exception: " + ex.getMessage(),
+                        "Test Connection", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    throw new RuntimeException(ex);
+                }
+            }
+        });
     }
 
     /**
@@ -1,5 +1,9 @@
 package com.datamap.ui;
 
+import com.datamap.engine.EngineOptions;
+import com.datamap.engine.ExecutionReport;
+import com.datamap.engine.MappingEngine;
+import com.datamap.engine.MappingModel;
 import com.datamap.model.DataSource;
 import com.datamap.model.SourceColumn;
 import com.datamap.model.SourceTable;
@@ -38,6 +42,7 @@ public class GenerateCodePanel extends JPanel {
     private JButton copyButton;
     private JButton saveButton;
     private JButton regenerateButton;
+    private JButton runButton;
 
     public GenerateCodePanel(DataMapWizard wizard) {
         this.wizard = wizard;
@@ -98,9 +103,18 @@ public class GenerateCodePanel extends JPanel {
             }
         });
 
+        runButton = new JButton("Run Mapping");
+        runButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runMapping();
+            }
+        });
+
         buttonPanel.add(regenerateButton);
         buttonPanel.add(copyButton);
         buttonPanel.add(saveButton);
+        buttonPanel.add(runButton);
 
         contentPanel.add(scrollPane, BorderLayout.CENTER);
         contentPanel.add(buttonPanel, BorderLayout.SOUTH);
@@ -117,6 +131,59 @@ public class GenerateCodePanel extends JPanel {
         codeArea.setText(code);
     }
 
+    /**
+     * Execute the current mappings against the configured databases and show the timings
+     */
+    private void runMapping() {
+        if (wizard.getTargetTables().isEmpty()) {
+            JOptionPane.showMessageDialog(this, "There are no target tables to load.",
+                    "Run Mapping", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        JCheckBox upsertCheckBox = new JCheckBox("Update rows that already exist (upsert by primary key)");
+        int answer = JOptionPane.showConfirmDialog(this,
+                new Object[]{"This writes rows into " + wizard.getTargetTables().size() + " target table(s). Continue?",
+                        upsertCheckBox},
+                "Run Mapping", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (answer != JOptionPane.OK_OPTION) {
+            return;
+        }
+        EngineOptions options = new EngineOptions();
+        if (upsertCheckBox.isSelected()) {
+            options.setWriteMode(EngineOptions.WriteMode.UPSERT);
+        }
+
+        final MappingModel model = MappingModel.of(wizard.getSourceTables(), wizard.getTargetTables(),
+                wizard.getMappings());
+        final MappingEngine engine = new MappingEngine(new ArrayList<>(wizard.getConfiguredDataSources()), options);
+
+        runButton.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        new SwingWorker<ExecutionReport, Void>() {
+            @Override
+            protected ExecutionReport doInBackground() {
+                return engine.run(model);
+            }
+
+            @Override
+            protected void done() {
+                runButton.setEnabled(true);
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    ExecutionReport report = get();
+                    JOptionPane.showMessageDialog(GenerateCodePanel.this, report.toString(),
+                            report.isSuccess() ? "Run Complete" : "Run Finished With Errors",
+                            report.isSuccess() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE);
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(GenerateCodePanel.this,
+                            "Error running mapping: " + ex.getMessage(),
+                            "Run Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     private void copyToClipboard() {
         StringSelection stringSelection = new StringSelection(codeArea.getText());
         Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
@@ -304,6 +371,10 @@ public class GenerateCodePanel extends JPanel {
             DataSource dataSource = new DataSource();
             dataSource.setName(tableConfig.getDataSourceName());
             wizard.addSourceTable(tableConfig.getName(),dataSource, tableConfig.getColumns().toArray(new String[0]));
+            if (tableConfig.getColumnMetadata() != null) {
+                wizard.getSourceTables().get(tableConfig.getName()).getTable()
+                        .putColumnMetadata(tableConfig.getColumnMetadata());
+            }
 
             // Add columns
             for (String column : tableConfig.getColumns()) {
@@ -318,6 +389,10 @@ public class GenerateCodePanel extends JPanel {
             dataSource.setName(tableConfig.getDataSourceName());
             wizard.addTargetTable(tableConfig.getSourceTableName(), tableConfig.getName(),dataSource,
                     tableConfig.getColumns().toArray(new String[0]));
+            if (tableConfig.getColumnMetadata() != null && wizard.getTargetTables().containsKey(tableConfig.getName())) {
+                wizard.getTargetTables().get(tableConfig.getName()).getTable()
+                        .putColumnMetadata(tableConfig.getColumnMetadata());
+            }
 
             // Add columns
             for (String column : tableConfig.getColumns()) {
@@ -0,0 +1,478 @@
+package com.datamap.util;
+
+import com.datamap.model.ColumnMetadata;
+import com.datamap.model.DataSource;
+import com.datamap.util.CatalogSnapshot.TableEntry;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keeps one {@link CatalogSnapshot} per data source. A snapshot is built with two bulk
+ * metadata calls (all tables/views, then all columns) instead of one getColumns round
+ * trip per table, so every later column lookup is served from memory.
+ * <p>
+ * Snapshots are also persisted by {@link SchemaCache}. On the next start the cached copy
+ * is checked against a fresh {@link SchemaFingerprint}: unchanged schemas are used as-is,
+ * a handful of altered tables are re-read individually, larger changes trigger a full load.
+ */
+public class CatalogService {
+    private static final Map<String, CatalogSnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+    // Loads in progress, so concurrent callers share one load per data source
+    private static final ConcurrentHashMap<String, FutureTask<CatalogSnapshot>> LOADING = new ConcurrentHashMap<>();
+
+    // One row per (index, column): schema, table, column, primary, unique, number of index columns
+    private static final String POSTGRES_KEYS_SQL =
+            "SELECT n.nspname, c.relname, a.attname, i.indisprimary, i.indisunique, i.indnatts " +
+            "FROM pg_index i " +
+            "JOIN pg_class c ON c.oid = i.indrelid " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum = ANY(i.indkey) " +
+            "WHERE n.nspname NOT IN ('pg_catalog', 'information_schema') AND n.nspname NOT LIKE 'pg_toast%' " +
+            "AND (CAST(? AS text) IS NULL OR n.nspname LIKE ?) AND c.relname LIKE ?";
+
+    private static final String MYSQL_KEYS_SQL =
+            "SELECT NULL, s.TABLE_NAME, s.COLUMN_NAME, s.INDEX_NAME = 'PRIMARY', s.NON_UNIQUE = 0, " +
+            "(SELECT COUNT(*) FROM information_schema.STATISTICS s2 WHERE s2.TABLE_SCHEMA = s.TABLE_SCHEMA " +
+            "AND s2.TABLE_NAME = s.TABLE_NAME AND s2.INDEX_NAME = s.INDEX_NAME) " +
+            "FROM information_schema.STATISTICS s " +
+            "WHERE s.TABLE_SCHEMA = COALESCE(?, DATABASE()) AND s.TABLE_NAME LIKE ?";
+
+    // Above this many changed tables a full bulk load is cheaper than per-table reads
+    private static final int MAX_INCREMENTAL_TABLES = 20;
+
+    /**
+     * Get the catalog snapshot of a data source, loading it on first use
+     *
+     * @param dataSource The data source
+     * @return The snapshot
+     * @throws ClassNotFoundException If the JDBC driver is not found
+     * @throws SQLException If a database error occurs
+     */
+    public static CatalogSnapshot getSnapshot(final DataSource dataSource) throws ClassNotFoundException, SQLException {
+        String key = snapshotKey(dataSource);
+        CatalogSnapshot snapshot = SNAPSHOTS.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        // Callers arriving while a load is running (e.g. the startup prefetch) wait for it
+        FutureTask<CatalogSnapshot> task = new FutureTask<>(new Callable<CatalogSnapshot>() {
+            @Override
+            public CatalogSnapshot call() throws Exception {
+                return load(dataSource);
+            }
+        });
+        FutureTask<CatalogSnapshot> running = LOADING.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+                SNAPSHOTS.put(key, await(task));
+            } finally {
+                LOADING.remove(key, task);
+            }
+        }
+        return await(running);
+    }
+
+    private static CatalogSnapshot await(FutureTask<CatalogSnapshot> task) throws ClassNotFoundException, SQLException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading the catalog", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            }
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("Failed to load the catalog: " + cause, cause);
+        }
+    }
+
+    /**
+     * Get the snapshot only if it is already in memory
+     *
+     * @param dataSource The data source
+     * @return The snapshot, or null if it has not been loaded yet
+     */
+    public static CatalogSnapshot getLoadedSnapshot(DataSource dataSource) {
+        return SNAPSHOTS.get(snapshotKey(dataSource));
+    }
+
+    /**
+     * Drop the cached snapshot (in memory and on disk) and load it again from the database
+     *
+     * @param dataSource The data source
+     * @return The fresh snapshot
+     * @throws ClassNotFoundException If the JDBC driver is not found
+     * @throws SQLException If a database error occurs
+     */
+    public static CatalogSnapshot refresh(DataSource dataSource) throws ClassNotFoundException, SQLException {
+        invalidate(dataSource);
+        SchemaCache.delete(dataSource);
+        return getSnapshot(dataSource);
+    }
+
+    /**
+     * Forget the cached snapshot of a data source
+     *
+     * @param dataSource The data source
+     */
+    public static void invalidate(DataSource dataSource) {
+        SNAPSHOTS.remove(snapshotKey(dataSource));
+    }
+
+    /**
+     * Get the columns of a table or view. Served from the snapshot; objects the snapshot
+     * does not know about (created after it was taken, or hidden from bulk metadata)
+     * fall back to a direct per-table lookup.
+     *
+     * @param dataSource The data source
+     * @param tableOrViewName The table or view name (may have "VIEW: " prefix)
+     * @return A list of column names
+     * @throws ClassNotFoundException If the JDBC driver is not found
+     * @throws SQLException If a database error occurs
+     */
+    public static List<String> getColumns(DataSource dataSource, String tableOrViewName)
+            throws ClassNotFoundException, SQLException {
+        String cleanName = DatabaseConnectionManager.getCleanName(tableOrViewName);
+        List<String> columns = getSnapshot(dataSource).getColumns(cleanName,
+                DatabaseConnectionManager.getDefaultSchema(dataSource));
+        if (columns != null && !columns.isEmpty()) {
+            return new ArrayList<>(columns);
+        }
+
+        try (Connection conn = DatabaseConnectionManager.getConnection(dataSource)) {
+            return DatabaseConnectionManager.getColumns(conn, cleanName);
+        }
+    }
+
+    /**
+     * Get the column metadata (type, nullability, keys, indexes) of a table or view.
+     * Served from the snapshot like {@link #getColumns}.
+     *
+     * @param dataSource The data source
+     * @param tableOrViewName The table or view name (may have "VIEW: " prefix)
+     * @return The column metadata in ordinal order
+     * @throws ClassNotFoundException If the JDBC driver is not found
+     * @throws SQLException If a database error occurs
+     */
+    public static List<ColumnMetadata> getColumnMetadata(DataSource dataSource, String tableOrViewName)
+            throws ClassNotFoundException, SQLException {
+        String cleanName = DatabaseConnectionManager.getCleanName(tableOrViewName);
+        CatalogSnapshot snapshot = getSnapshot(dataSource);
+        List<ColumnMetadata> columns = snapshot.getColumnMetadata(cleanName,
+                DatabaseConnectionManager.getDefaultSchema(dataSource));
+        // Elsewhere the snapshot only has types; keys and indexes are read per table
+        if (columns != null && !columns.isEmpty() && hasBulkKeys(dataSource)) {
+            return new ArrayList<>(columns);
+        }
+
+        try (Connection conn = DatabaseConnectionManager.getConnection(dataSource)) {
+            return DatabaseConnectionManager.getColumnMetadata(conn, cleanName);
+        }
+    }
+
+    /**
+     * Get one page of table and/or view names, ordered by name. If the snapshot is already
+     * in memory the page is cut from it; otherwise only the page is queried from the
+     * database, so browsing a large catalog never requires loading all of it.
+     *
+     * @param dataSource The data source
+     * @param schema Only objects of this schema, or null for all schemas
+     * @param nameFilter Case-insensitive substring of the name, or null/empty for all
+     * @param includeTables Include base tables
+     * @param includeViews Include views
+     * @param offset Number of names to skip
+     * @param limit Maximum number of names to return
+     * @return The names on the page
+     * @throws ClassNotFoundException If the JDBC driver is not found
+     * @throws SQLException If a database error occurs
+     */
+    public static List<String> getTablePage(DataSource dataSource, String schema, String nameFilter,
+                                            boolean includeTables, boolean includeViews, int offset, int limit)
+            throws ClassNotFoundException, SQLException {
+        CatalogSnapshot snapshot = getLoadedSnapshot(dataSource);
+        // A snapshot scoped to one schema cannot answer for other schemas
+        if (snapshot != null && (dataSource.getSchemaName() == null || dataSource.getSchemaName().equals(schema))) {
+            String needle = nameFilter == null ? "" : nameFilter.toLowerCase(Locale.ROOT);
+            String defaultSchema = DatabaseConnectionManager.getDefaultSchema(dataSource);
+            // Named as getTablesPage names them; a set, as without a default schema names can repeat
+            Set<String> unique = new TreeSet<>();
+            for (TableEntry entry : snapshot.getTables()) {
+                if ((entry.isView() ? includeViews : includeTables)
+                        && (schema == null || schema.equals(entry.getSchema()) || entry.getSchema() == null)
+                        && entry.getName().toLowerCase(Locale.ROOT).contains(needle)) {
+                    unique.add(DatabaseConnectionManager.qualifiedName(entry.getSchema(), entry.getName(), defaultSchema));
+                }
+            }
+            List<String> names = new ArrayList<>(unique);
+            int from = Math.min(offset, names.size());
+            return new ArrayList<>(names.subList(from, Math.min(from + limit, names.size())));
+        }
+
+        try (Connection conn = DatabaseConnectionManager.getConnection(dataSource)) {
+            return DatabaseConnectionManager.getTablesPage(conn, dataSource, schema, nameFilter,
+                    includeTables, includeViews, offset, limit);
+        }
+    }
+
+    /**
+     * Get the schemas a data source's tables can be picked from
+     *
+     * @param dataSource The data source
+     * @return The schema names; empty for databases without schemas (MySQL)
+     * @throws ClassNotFoundException If the JDBC driver is not found
+     * @throws SQLException If a database error occurs
+     */
+    public static List<String> getSchemas(DataSource dataSource) throws ClassNotFoundException, SQLException {
+        if ("mysql".equals(dataSource.getDbType())) {
+            return new ArrayList<>();
+        }
+        try (Connection conn = DatabaseConnectionManager.getConnection(dataSource)) {
+            return DatabaseConnectionManager.getSchemas(conn);
+        }
+    }
+
+    private static CatalogSnapshot load(DataSource dataSource) throws ClassNotFoundException, SQLException {
+        try (Connection conn = DatabaseConnectionManager.getConnection(dataSource)) {
+            Map<String, String> fingerprints = SchemaFingerprint.fetch(conn, dataSource);
+            if (fingerprints == null) {
+                // Without a fingerprint a cached copy cannot be trusted
+                return new CatalogSnapshot(dataSource.getName(),
+                        loadTables(conn, dataSource, defaultSchemaPattern(conn, dataSource), "%"));
+            }
+
+            CatalogSnapshot cached = SchemaCache.load(dataSource);
+            CatalogSnapshot snapshot = null;
+            if (cached != null && cached.getFingerprints() != null) {
+                snapshot = reconcile(conn, dataSource, cached, fingerprints);
+            }
+            if (snapshot == null) {
+                snapshot = new CatalogSnapshot(dataSource.getName(),
+                        loadTables(conn, dataSource, defaultSchemaPattern(conn, dataSource), "%"));
+            }
+
+            if (snapshot != cached) {
+                snapshot.setFingerprints(fingerprints);
+                SchemaCache.save(dataSource, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Bring a cached snapshot up to date with the current fingerprints
+     *
+     * @return The cached snapshot if nothing changed, an updated copy if only a few tables
+     *         changed, or null if a full reload is needed
+     */
+    private static CatalogSnapshot reconcile(Connection conn, DataSource dataSource, CatalogSnapshot cached,
+                                             Map<String, String> current) throws SQLException {
+        Map<String, String> previous = cached.getFingerprints();
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return cached;
+        }
+        if (changed.size() > MAX_INCREMENTAL_TABLES) {
+            return null;
+        }
+
+        // Drop the stale entries, then re-read only the tables that still exist
+        List<TableEntry> tables = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (TableEntry entry : cached.getTables()) {
+            if (!changed.contains(SchemaFingerprint.key(entry.getSchema(), entry.getName()))) {
+                tables.add(entry);
+                names.add(entry.getName());
+            }
+        }
+
+        String escape = conn.getMetaData().getSearchStringEscape();
+        for (String key : changed) {
+            if (!current.containsKey(key)) {
+                continue;
+            }
+            String schema = SchemaFingerprint.schemaOf(key);
+            String name = SchemaFingerprint.nameOf(key);
+            for (TableEntry entry : loadTables(conn, dataSource, escapePattern(schema, escape),
+                    escapePattern(name, escape))) {
+                if (names.add(entry.getName())) {
+                    tables.add(entry);
+                }
+            }
+        }
+
+        return new CatalogSnapshot(dataSource.getName(), tables);
+    }
+
+    /**
+     * Read tables, views and their columns with two metadata queries
+     *
+     * @param schemaPattern Schema pattern, or null for all schemas
+     * @param tablePattern Table name pattern; "%" reads the whole catalog
+     */
+    static List<TableEntry> loadTables(Connection conn, DataSource dataSource,
+                                       String schemaPattern, String tablePattern) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        String catalog = catalogFor(conn, dataSource);
+
+        // Keyed by schema + name so columns can be attached without a search
+        Map<String, TableEntry> entries = new LinkedHashMap<>();
+        Map<String, TableEntry> firstByName = new LinkedHashMap<>();
+
+        try (ResultSet rs = metaData.getTables(catalog, schemaPattern, tablePattern, new String[]{"TABLE", "VIEW"})) {
+            while (rs.next()) {
+                String schema = rs.getString("TABLE_SCHEM");
+                if (isSystemSchema(schema)) {
+                    continue;
+                }
+                String name = rs.getString("TABLE_NAME");
+                boolean view = "VIEW".equalsIgnoreCase(rs.getString("TABLE_TYPE"));
+
+                // The same name in several schemas: keep the first, like the table lists did
+                if (firstByName.containsKey(name)) {
+                    continue;
+                }
+                TableEntry entry = new TableEntry(schema, name, view);
+                firstByName.put(name, entry);
+                entries.put(entryKey(schema, name), entry);
+            }
+        }
+
+        try (ResultSet rs = metaData.getColumns(catalog, schemaPattern, tablePattern, "%")) {
+            while (rs.next()) {
+                TableEntry entry = entries.get(entryKey(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME")));
+                if (entry != null) {
+                    ColumnMetadata column = DatabaseConnectionManager.readColumnMetadata(rs);
+                    entry.getColumns().add(column.getName());
+                    entry.getColumnMetadata().add(column);
+                }
+            }
+        }
+
+        loadKeys(conn, dataSource, catalog, schemaPattern, tablePattern, entries);
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Mark primary key, unique and indexed columns with one catalog query. Databases
+     * without a bulk query keep the defaults; their keys are read per table on demand.
+     */
+    private static void loadKeys(Connection conn, DataSource dataSource, String catalog, String schemaPattern,
+                                 String tablePattern, Map<String, TableEntry> entries) throws SQLException {
+        if (!hasBulkKeys(dataSource)) {
+            return;
+        }
+
+        String sql = "postgres".equals(dataSource.getDbType()) ? POSTGRES_KEYS_SQL : MYSQL_KEYS_SQL;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if ("postgres".equals(dataSource.getDbType())) {
+                ps.setString(1, schemaPattern);
+                ps.setString(2, schemaPattern);
+                ps.setString(3, tablePattern);
+            } else {
+                ps.setString(1, catalog);
+                ps.setString(2, tablePattern);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    TableEntry entry = entries.get(entryKey(rs.getString(1), rs.getString(2)));
+                    if (entry == null) {
+                        continue;
+                    }
+                    for (ColumnMetadata column : entry.getColumnMetadata()) {
+                        if (column.getName().equals(rs.getString(3))) {
+                            column.setIndexed(true);
+                            column.setPrimaryKey(column.isPrimaryKey() || rs.getBoolean(4));
+                            // Only an index on this column alone makes its values unique
+                            column.setUnique(column.isUnique() || (rs.getBoolean(5) && rs.getInt(6) == 1));
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * MySQL reports databases as catalogs; restrict the bulk queries to the configured
+     * schema (database), or the connected one
+     */
+    private static String catalogFor(Connection conn, DataSource dataSource) throws SQLException {
+        if (!"mysql".equals(dataSource.getDbType())) {
+            return null;
+        }
+        return dataSource.getSchemaName() != null ? dataSource.getSchemaName() : conn.getCatalog();
+    }
+
+    /**
+     * @return The schema pattern matching only the data source's schema, or null for all schemas
+     */
+    private static String defaultSchemaPattern(Connection conn, DataSource dataSource) throws SQLException {
+        if (dataSource.getSchemaName() == null || "mysql".equals(dataSource.getDbType())) {
+            return null;
+        }
+        return escapePattern(dataSource.getSchemaName(), conn.getMetaData().getSearchStringEscape());
+    }
+
+    /**
+     * Escape LIKE wildcards so a metadata pattern matches exactly one name
+     */
+    private static String escapePattern(String name, String escape) {
+        if (name == null || escape == null || escape.isEmpty()) {
+            return name;
+        }
+        return name.replace(escape, escape + escape)
+                .replace("_", escape + "_")
+                .replace("%", escape + "%");
+    }
+
+    private static boolean hasBulkKeys(DataSource dataSource) {
+        return "postgres".equals(dataSource.getDbType()) || "mysql".equals(dataSource.getDbType());
+    }
+
+    private static boolean isSystemSchema(String schema) {
+        return schema != null && ("pg_catalog".equals(schema) || "information_schema".equals(schema));
+    }
+
+    private static String entryKey(String schema, String name) {
+        return (schema == null ? "" : schema) + "\u0000" + name;
+    }
+
+    private static String snapshotKey(DataSource dataSource) {
+        return dataSource.getName() + "|" + dataSource.getJdbcUrl() + "|" + dataSource.getUsername() +
+                "|" + dataSource.getSchemaName();
+    }
+}
@@ -0,0 +1,245 @@
+package com.datamap.util;
+
+import com.datamap.model.ColumnMetadata;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory copy of the tables, views and columns of one data source.
+ * Lookups by table name are hash hits; the snapshot is immutable once indexed.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CatalogSnapshot {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class TableEntry {
+        private String schema;
+        private String name;
+        private boolean view;
+        private List<String> columns = new ArrayList<>();
+        // Same order as columns
+        private List<ColumnMetadata> columnMetadata = new ArrayList<>();
+
+        public TableEntry() {
+        }
+
+        public TableEntry(String schema, String name, boolean view) {
+            this.schema = schema;
+            this.name = name;
+            this.view = view;
+        }
+
+        public String getSchema() {
+            return schema;
+        }
+
+        public void setSchema(String schema) {
+            this.schema = schema;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public boolean isView() {
+            return view;
+        }
+
+        public void setView(boolean view) {
+            this.view = view;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public void setColumns(List<String> columns) {
+            this.columns = columns;
+        }
+
+        public List<ColumnMetadata> getColumnMetadata() {
+            return columnMetadata;
+        }
+
+        public void setColumnMetadata(List<ColumnMetadata> columnMetadata) {
+            this.columnMetadata = columnMetadata;
+        }
+    }
+
+    // Bumped whenever the stored fields change, so older cache files are reloaded
+    public static final int FORMAT_VERSION = 2;
+
+    private int formatVersion; // Stays 0 when read from a file that predates versioning
+
+    private String dataSourceName;
+    private long loadedAt;
+    private List<TableEntry> tables = new ArrayList<>();
+    // Per-table schema signatures taken together with the snapshot, see SchemaFingerprint
+    private Map<String, String> fingerprints;
+
+    @JsonIgnore
+    private Map<String, TableEntry> byName;
+    @JsonIgnore
+    private Map<String, TableEntry> byLowerName;
+
+    public CatalogSnapshot() {
+    }
+
+    public CatalogSnapshot(String dataSourceName, List<TableEntry> tables) {
+        this.dataSourceName = dataSourceName;
+        this.tables = tables;
+        this.loadedAt = System.currentTimeMillis();
+        this.formatVersion = FORMAT_VERSION;
+    }
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public void setFormatVersion(int formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    public String getDataSourceName() {
+        return dataSourceName;
+    }
+
+    public void setDataSourceName(String dataSourceName) {
+        this.dataSourceName = dataSourceName;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public void setLoadedAt(long loadedAt) {
+        this.loadedAt = loadedAt;
+    }
+
+    public List<TableEntry> getTables() {
+        return tables;
+    }
+
+    public void setTables(List<TableEntry> tables) {
+        this.tables = tables;
+        this.byName = null;
+        this.byLowerName = null;
+    }
+
+    public Map<String, String> getFingerprints() {
+        return fingerprints;
+    }
+
+    public void setFingerprints(Map<String, String> fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Find a table or view by name, either schema.name or a bare name. A bare name is
+     * first looked for in the default schema, then in any schema. Exact matches win;
+     * otherwise the lookup falls back to a case-insensitive match.
+     *
+     * @param name The table or view name
+     * @param defaultSchema The schema bare names resolve to, or null if unknown
+     * @return The entry, or null if the snapshot does not know the object
+     */
+    public TableEntry findTable(String name, String defaultSchema) {
+        if (name == null) {
+            return null;
+        }
+        ensureIndexed();
+        TableEntry entry = null;
+        if (defaultSchema != null && name.indexOf('.') < 0) {
+            entry = find(defaultSchema + "." + name);
+        }
+        return entry != null ? entry : find(name);
+    }
+
+    private TableEntry find(String name) {
+        TableEntry entry = byName.get(name);
+        if (entry == null) {
+            entry = byLowerName.get(name.toLowerCase(Locale.ROOT));
+        }
+        return entry;
+    }
+
+    /**
+     * Get the column names of a table or view, in ordinal order
+     *
+     * @param name The table or view name, see {@link #findTable}
+     * @param defaultSchema The schema bare names resolve to, or null if unknown
+     * @return The column names, or null if the table is not in the snapshot
+     */
+    public List<String> getColumns(String name, String defaultSchema) {
+        TableEntry entry = findTable(name, defaultSchema);
+        return entry == null ? null : Collections.unmodifiableList(entry.getColumns());
+    }
+
+    /**
+     * Get the column metadata (type, nullability, keys, indexes) of a table or view
+     *
+     * @param name The table or view name, see {@link #findTable}
+     * @param defaultSchema The schema bare names resolve to, or null if unknown
+     * @return The metadata in ordinal order, or null if the table is not in the snapshot
+     */
+    public List<ColumnMetadata> getColumnMetadata(String name, String defaultSchema) {
+        TableEntry entry = findTable(name, defaultSchema);
+        return entry == null ? null : Collections.unmodifiableList(entry.getColumnMetadata());
+    }
+
+    /**
+     * @return The names of all base tables
+     */
+    @JsonIgnore
+    public List<String> getTableNames() {
+        return namesOf(false);
+    }
+
+    /**
+     * @return The names of all views
+     */
+    @JsonIgnore
+    public List<String> getViewNames() {
+        return namesOf(true);
+    }
+
+    private List<String> namesOf(boolean views) {
+        List<String> names = new ArrayList<>();
+        for (TableEntry entry : tables) {
+            if (entry.isView() == views) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    private synchronized void ensureIndexed() {
+        if (byName != null) {
+            return;
+        }
+        Map<String, TableEntry> exact = new HashMap<>(tables.size() * 2);
+        Map<String, TableEntry> lower = new HashMap<>(tables.size() * 2);
+        for (TableEntry entry : tables) {
+            exact.putIfAbsent(entry.getName(), entry);
+            lower.putIfAbsent(entry.getName().toLowerCase(Locale.ROOT), entry);
+            if (entry.getSchema() != null) {
+                String qualified = entry.getSchema() + "." + entry.getName();
+                exact.putIfAbsent(qualified, entry);
+                lower.putIfAbsent(qualified.toLowerCase(Locale.ROOT), entry);
+            }
+        }
+        byLowerName = lower;
+        byName = exact;
+    }
+}
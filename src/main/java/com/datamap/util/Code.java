@@ -6,8 +6,12 @@ import com.datamap.model.TargetColumn;
 import com.datamap.model.TargetTable;
 import com.datamap.model.mapping.*;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Code {
     public static String generateCode(Map<String, SourceTable> sourceTables,
@@ -89,6 +93,21 @@ public class Code {
 
         code.append("\n");
 
+        // 按关联签名分组 ExternalConnection 映射
+        Map<String, List<ExternalConnection>> externalGroups = new LinkedHashMap<>();
+        for (Mapping mapping : mappings) {
+            if (mapping instanceof ExternalConnection) {
+                ExternalConnection externalMapping = (ExternalConnection) mapping;
+                List<ExternalConnection> group = externalGroups.get(externalMapping.getJoinSignature());
+                if (group == null) {
+                    group = new ArrayList<>();
+                    externalGroups.put(externalMapping.getJoinSignature(), group);
+                }
+                group.add(externalMapping);
+            }
+        }
+        Set<String> emittedSignatures = new HashSet<>();
+
         // Add mappings with comments
         for (Mapping mapping : mappings) {
             if (mapping instanceof None) {
@@ -113,41 +132,19 @@ public class Code {
                 code.append(mapping.generateCode()).append("\n");
             } else if (mapping instanceof ExternalConnection) {
                 ExternalConnection externalMapping = (ExternalConnection) mapping;
-
-                StringBuilder commentBuilder = new StringBuilder();
-                commentBuilder.append("//查询[").append(externalMapping.getFinalSelectColumn().getTable().getName())
-                        .append("].{").append(externalMapping.getFinalSelectColumn().getName()).append("}，条件是[")
-                        .append(externalMapping.getWhereSelectTable().getTable().getName()).append("].{")
-                        .append(externalMapping.getWhereIdColumn().getName()).append("}=[")
-                        .append(externalMapping.getSourceIdColumn().getTable().getName()).append("].{")
-                        .append(externalMapping.getSourceIdColumn().getName()).append("}-->");
-                
-                // Add LEFT JOIN comments if any
-                List<LeftJoin> joins = externalMapping.getJoins();
-                if (!joins.isEmpty()) {
-                    commentBuilder.append(" 通过");
-                    for (int i = 0; i < joins.size(); i++) {
-                        LeftJoin join = joins.get(i);
-                        if (i > 0) {
-                            commentBuilder.append(" 和");
-                        }
-                        commentBuilder.append(" LEFT JOIN ")
-                                    .append(join.getLeftColumn().getTable().getName())
-                                    .append(".")
-                                    .append(join.getLeftColumn().getName())
-                                    .append(" = ")
-                                    .append(join.getRightColumn().getTable().getName())
-                                    .append(".")
-                                    .append(join.getRightColumn().getName());
-                    }
+                // 关联签名相同的映射集中输出在第一个映射处，只是查询列不同，可合并为一次查询
+                String signature = externalMapping.getJoinSignature();
+                if (!emittedSignatures.add(signature)) {
+                    continue;
+                }
+                List<ExternalConnection> group = externalGroups.get(signature);
+                if (group.size() > 1) {
+                    code.append("//以下").append(group.size()).append("个映射关联路径相同(")
+                            .append(signature).append(")，可合并为一次查询\n");
+                }
+                for (ExternalConnection member : group) {
+                    appendExternalConnection(code, member);
                 }
-                
-                commentBuilder.append(externalMapping.getTargetColumn().getTable().getName())
-                            .append("的")
-                            .append(externalMapping.getTargetColumn().getName());
-                
-                code.append(commentBuilder.toString()).append("\n");
-                code.append("    ").append(externalMapping.generateCode()).append("\n");
             }
         }
 
@@ -157,4 +154,41 @@ public class Code {
         code.append(end);
         return code.toString();
     }
-}
\ No newline at end of file
+
+    private static void appendExternalConnection(StringBuilder code, ExternalConnection externalMapping) {
+        StringBuilder commentBuilder = new StringBuilder();
+        commentBuilder.append("//查询[").append(externalMapping.getFinalSelectColumn().getTable().getName())
+                .append("].{").append(externalMapping.getFinalSelectColumn().getName()).append("}，条件是[")
+                .append(externalMapping.getWhereSelectTable().getTable().getName()).append("].{")
+                .append(externalMapping.getWhereIdColumn().getName()).append("}=[")
+                .append(externalMapping.getSourceIdColumn().getTable().getName()).append("].{")
+                .append(externalMapping.getSourceIdColumn().getName()).append("}-->");
+        
+        // Add LEFT JOIN comments if any
+        List<LeftJoin> joins = externalMapping.getJoins();
+        if (!joins.isEmpty()) {
+            commentBuilder.append(" 通过");
+            for (int i = 0; i < joins.size(); i++) {
+                LeftJoin join = joins.get(i);
+                if (i > 0) {
+                    commentBuilder.append(" 和");
+                }
+                commentBuilder.append(" LEFT JOIN ")
+                            .append(join.getLeftColumn().getTable().getName())
+                            .append(".")
+                            .append(join.getLeftColumn().getName())
+                            .append(" = ")
+                            .append(join.getRightColumn().getTable().getName())
+                            .append(".")
+                            .append(join.getRightColumn().getName());
+            }
+        }
+        
+        commentBuilder.append(externalMapping.getTargetColumn().getTable().getName())
+                    .append("的")
+                    .append(externalMapping.getTargetColumn().getName());
+        
+        code.append(commentBuilder.toString()).append("\n");
+        code.append("    ").append(externalMapping.generateCode()).append("\n");
+    }
+}
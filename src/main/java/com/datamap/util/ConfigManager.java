@@ -1,10 +1,15 @@
 package com.datamap.util;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,10 +19,15 @@ public class ConfigManager {
     private static final String CONFIG_DIR = System.getProperty("user.home") + File.separator + ".data-mapping-wizard";
     private static final String CONFIG_PATH = CONFIG_DIR + File.separator + CONFIG_FILENAME;
     private static final String GLOBAL_CONFIG_PATH = CONFIG_DIR + File.separator + GLOBAL_CONFIG_FILENAME;
+    private static final String SCHEMA_CACHE_DIR = CONFIG_DIR + File.separator + "schema-cache";
+    private static final String WATERMARK_PATH = CONFIG_DIR + File.separator + "watermarks.json";
+    private static final String CHECKPOINT_DIR = CONFIG_DIR + File.separator + "checkpoints";
 
     // 全局配置类
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class GlobalConfig {
         private String workingDirectory;
+        private boolean prefetchMetadata; // 启动时并行预加载所有数据源的元数据
 
         public GlobalConfig() {
         }
@@ -29,6 +39,21 @@ public class ConfigManager {
         public void setWorkingDirectory(String workingDirectory) {
             this.workingDirectory = workingDirectory;
         }
+
+        public boolean isPrefetchMetadata() {
+            return prefetchMetadata;
+        }
+
+        public void setPrefetchMetadata(boolean prefetchMetadata) {
+            this.prefetchMetadata = prefetchMetadata;
+        }
+    }
+
+    /**
+     * 文件内容的写入方式，见 {@link #replaceFile(File, Contents)}
+     */
+    public interface Contents {
+        void writeTo(OutputStream out) throws IOException;
     }
 
     static {
@@ -47,13 +72,72 @@ public class ConfigManager {
         return GLOBAL_CONFIG_PATH;
     }
 
+    /**
+     * 获取数据库结构缓存目录（不存在时创建）
+     */
+    public static File getSchemaCacheDir() {
+        File dir = new File(SCHEMA_CACHE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    /**
+     * 获取增量运行水位文件路径
+     */
+    public static File getWatermarkFile() {
+        return new File(WATERMARK_PATH);
+    }
+
+    /**
+     * 获取断点续传检查点目录
+     */
+    public static File getCheckpointDir() {
+        return new File(CHECKPOINT_DIR);
+    }
+
+    /**
+     * 替换文件内容：先写入同目录的临时文件，再原子地改名覆盖（文件系统不支持时退为普通改名），
+     * 崩溃时不会留下写了一半的文件；失败时删除临时文件
+     */
+    public static void replaceFile(File file, Contents contents) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                contents.writeTo(out);
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+    }
+
     /**
      * 保存全局配置
      */
     public static void saveGlobalConfig(String workingDirectory) throws IOException {
-        GlobalConfig config = new GlobalConfig();
+        // 保留其他设置，只替换工作目录
+        GlobalConfig config;
+        try {
+            config = loadGlobalConfig();
+        } catch (IOException e) {
+            config = new GlobalConfig();
+        }
         config.setWorkingDirectory(workingDirectory);
+        saveGlobalConfig(config);
+    }
 
+    /**
+     * 保存完整的全局配置
+     */
+    public static void saveGlobalConfig(GlobalConfig config) throws IOException {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
         objectMapper.writeValue(new File(GLOBAL_CONFIG_PATH), config);
@@ -75,6 +159,26 @@ public class ConfigManager {
         return objectMapper.readValue(configFile, GlobalConfig.class);
     }
 
+    /**
+     * 是否在启动时预加载元数据
+     */
+    public static boolean isPrefetchMetadata() {
+        try {
+            return loadGlobalConfig().isPrefetchMetadata();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 设置是否在启动时预加载元数据
+     */
+    public static void setPrefetchMetadata(boolean prefetchMetadata) throws IOException {
+        GlobalConfig config = loadGlobalConfig();
+        config.setPrefetchMetadata(prefetchMetadata);
+        saveGlobalConfig(config);
+    }
+
     /**
      * 获取当前工作目录
      */
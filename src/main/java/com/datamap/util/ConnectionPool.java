@@ -0,0 +1,389 @@
+package com.datamap.util;
+
+import com.datamap.model.DataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small JDBC connection pool for a single data source.
+ * Connections handed out by {@link #borrow()} are proxies: calling close() on them
+ * returns the physical connection to the pool instead of closing it.
+ */
+public class ConnectionPool {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+
+    private final Deque<IdleConnection> idle = new ArrayDeque<>();
+    private int openCount = 0;
+    private boolean closed = false;
+
+    // Metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong createCount = new AtomicLong();
+    private final AtomicLong evictCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+
+    /**
+     * Snapshot of the pool counters
+     */
+    public static class Stats {
+        private final String dataSourceName;
+        private final long borrows;
+        private final long hits;
+        private final long creates;
+        private final long evictions;
+        private final long validationFailures;
+        private final int open;
+        private final int idle;
+
+        Stats(String dataSourceName, long borrows, long hits, long creates, long evictions,
+              long validationFailures, int open, int idle) {
+            this.dataSourceName = dataSourceName;
+            this.borrows = borrows;
+            this.hits = hits;
+            this.creates = creates;
+            this.evictions = evictions;
+            this.validationFailures = validationFailures;
+            this.open = open;
+            this.idle = idle;
+        }
+
+        public String getDataSourceName() {
+            return dataSourceName;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getCreates() {
+            return creates;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        public int getOpen() {
+            return open;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * @return Fraction of borrows served by an already open connection
+         */
+        public double getHitRatio() {
+            return borrows == 0 ? 0.0 : (double) hits / borrows;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: borrows=%d, hits=%d (%.0f%%), creates=%d, evictions=%d, " +
+                            "validationFailures=%d, open=%d, idle=%d",
+                    dataSourceName, borrows, hits, getHitRatio() * 100, creates, evictions,
+                    validationFailures, open, idle);
+        }
+    }
+
+    private static class IdleConnection {
+        final Connection connection;
+        final long idleSince;
+
+        IdleConnection(Connection connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    /**
+     * Create a pool for a data source
+     *
+     * @param dataSource The data source connection info
+     * @param maxSize Maximum number of physical connections (idle + in use)
+     * @param idleTimeoutMillis Idle connections older than this are closed by {@link #evictIdle()}
+     * @param borrowTimeoutMillis How long {@link #borrow()} waits for a free slot when the pool is exhausted
+     */
+    public ConnectionPool(DataSource dataSource, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    /**
+     * Borrow a connection from the pool. Idle connections are validated before they
+     * are handed out; broken ones are discarded and replaced.
+     *
+     * @return A pooled connection; close it to give it back
+     * @throws ClassNotFoundException If the JDBC driver is not found
+     * @throws SQLException If a database error occurs or no connection became free in time
+     */
+    public Connection borrow() throws ClassNotFoundException, SQLException {
+        borrowCount.incrementAndGet();
+        long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+
+        while (true) {
+            Connection candidate = null;
+            boolean mayCreate = false;
+
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("Connection pool for " + dataSource.getName() + " is closed");
+                }
+                IdleConnection entry = idle.pollFirst();
+                if (entry != null) {
+                    candidate = entry.connection;
+                } else if (openCount < maxSize) {
+                    // Reserve the slot before leaving the lock
+                    openCount++;
+                    mayCreate = true;
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SQLException("Timed out waiting for a connection to " + dataSource.getName() +
+                                " (pool size " + maxSize + ")");
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    }
+                    continue;
+                }
+            }
+
+            if (candidate != null) {
+                if (isUsable(candidate)) {
+                    hitCount.incrementAndGet();
+                    return wrap(candidate);
+                }
+                validationFailureCount.incrementAndGet();
+                discard(candidate);
+                continue;
+            }
+
+            if (mayCreate) {
+                try {
+                    Connection physical = open();
+                    createCount.incrementAndGet();
+                    return wrap(physical);
+                } catch (SQLException | ClassNotFoundException | RuntimeException e) {
+                    synchronized (this) {
+                        openCount--;
+                        notifyAll();
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Close idle connections that have not been used for longer than the idle timeout
+     *
+     * @return The number of connections closed
+     */
+    public int evictIdle() {
+        List<Connection> expired = new ArrayList<>();
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+
+        synchronized (this) {
+            Iterator<IdleConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                IdleConnection entry = it.next();
+                if (entry.idleSince < cutoff) {
+                    it.remove();
+                    expired.add(entry.connection);
+                }
+            }
+        }
+
+        for (Connection conn : expired) {
+            evictCount.incrementAndGet();
+            discard(conn);
+        }
+        return expired.size();
+    }
+
+    /**
+     * Close all idle connections and refuse further borrows. Connections still in use
+     * are closed when they are returned.
+     */
+    public void close() {
+        List<Connection> toClose = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (IdleConnection entry : idle) {
+                toClose.add(entry.connection);
+            }
+            idle.clear();
+            notifyAll();
+        }
+        for (Connection conn : toClose) {
+            discard(conn);
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(dataSource.getName(), borrowCount.get(), hitCount.get(), createCount.get(),
+                evictCount.get(), validationFailureCount.get(), openCount, idle.size());
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private Connection open() throws ClassNotFoundException, SQLException {
+        // Load the JDBC driver
+        Class.forName(dataSource.getJdbcDriver());
+
+        Properties props = new Properties();
+        if (dataSource.getUsername() != null) {
+            props.setProperty("user", dataSource.getUsername());
+        }
+        if (dataSource.getPassword() != null) {
+            props.setProperty("password", dataSource.getPassword());
+        }
+        // Let the driver turn JDBC batches into multi-row statements; settings in the URL still win
+        if ("mysql".equals(dataSource.getDbType())) {
+            props.setProperty("rewriteBatchedStatements", "true");
+        } else if ("postgres".equals(dataSource.getDbType())) {
+            props.setProperty("reWriteBatchedInserts", "true");
+        }
+        return DriverManager.getConnection(dataSource.getJdbcUrl(), props);
+    }
+
+    private boolean isUsable(Connection conn) {
+        try {
+            return !conn.isClosed() && conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Give a physical connection back. Any open transaction is rolled back and the
+     * session defaults restored so the next borrower starts clean.
+     */
+    private void release(Connection physical) {
+        boolean reusable;
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (physical.isReadOnly()) {
+                physical.setReadOnly(false);
+            }
+            reusable = !physical.isClosed();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        synchronized (this) {
+            if (reusable && !closed) {
+                idle.addFirst(new IdleConnection(physical, System.currentTimeMillis()));
+                notifyAll();
+                return;
+            }
+        }
+        discard(physical);
+    }
+
+    private void discard(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            // Nothing useful to do with a connection that fails to close
+        }
+        synchronized (this) {
+            openCount--;
+            notifyAll();
+        }
+    }
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(physical));
+    }
+
+    /**
+     * Intercepts close() so the physical connection goes back to the pool
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private boolean returned = false;
+
+        PooledConnectionHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!returned) {
+                    returned = true;
+                    release(physical);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return returned || physical.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "Pooled[" + physical + "]";
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
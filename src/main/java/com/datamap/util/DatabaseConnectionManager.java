@@ -1,15 +1,53 @@
 package com.datamap.util;
 
+import com.datamap.model.ColumnMetadata;
 import com.datamap.model.DataSource;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseConnectionManager {
+    private static final int POOL_MAX_SIZE = 8;
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long EVICTION_INTERVAL_SECONDS = 60;
+
+    // One pool per distinct connection identity (driver, url, user, password)
+    private static final Map<String, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "connection-pool-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        EVICTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (ConnectionPool pool : POOLS.values()) {
+                    pool.evictIdle();
+                }
+            }
+        }, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(DatabaseConnectionManager::closeAllPools));
+    }
 
     /**
-     * Get a database connection from a data source
+     * Get a database connection from a data source. The connection comes from the
+     * data source's pool; closing it returns it to the pool.
      *
      * @param dataSource The data source connection info
      * @return The database connection
@@ -17,19 +55,60 @@ public class DatabaseConnectionManager {
      * @throws SQLException If a database error occurs
      */
     public static Connection getConnection(DataSource dataSource) throws ClassNotFoundException, SQLException {
-        // Load the JDBC driver
-        Class.forName(dataSource.getJdbcDriver());
+        return getPool(dataSource).borrow();
+    }
 
-        // Create a connection
-        return DriverManager.getConnection(
-                dataSource.getJdbcUrl(),
-                dataSource.getUsername(),
-                dataSource.getPassword()
-        );
+    /**
+     * Get (or create) the connection pool for a data source
+     *
+     * @param dataSource The data source connection info
+     * @return The pool shared by every caller using the same connection settings
+     */
+    public static ConnectionPool getPool(DataSource dataSource) {
+        String key = poolKey(dataSource);
+        ConnectionPool pool = POOLS.get(key);
+        if (pool == null) {
+            ConnectionPool created = new ConnectionPool(dataSource, POOL_MAX_SIZE,
+                    POOL_IDLE_TIMEOUT_MILLIS, POOL_BORROW_TIMEOUT_MILLIS);
+            pool = POOLS.putIfAbsent(key, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
     }
 
     /**
-     * Test a database connection
+     * Get the borrow/hit counters of every pool created so far
+     *
+     * @return One stats snapshot per pool
+     */
+    public static List<ConnectionPool.Stats> getPoolStats() {
+        List<ConnectionPool.Stats> stats = new ArrayList<>();
+        for (ConnectionPool pool : POOLS.values()) {
+            stats.add(pool.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Close every pool and its idle connections
+     */
+    public static void closeAllPools() {
+        for (ConnectionPool pool : POOLS.values()) {
+            pool.close();
+        }
+        POOLS.clear();
+    }
+
+    private static String poolKey(DataSource dataSource) {
+        return dataSource.getJdbcDriver() + "|" + dataSource.getJdbcUrl() + "|" +
+                dataSource.getUsername() + "|" + dataSource.getPassword();
+    }
+
+    /**
+     * Test a database connection. A pooled connection is validated before it is
+     * handed out, so a stale pool entry never makes the test pass.
      *
      * @param dataSource The data source to test
      * @return true if connection is successful, false otherwise
@@ -162,6 +241,166 @@ public class DatabaseConnectionManager {
         return tablesAndViews;
     }
 
+    /**
+     * Get the user schemas of a database. MySQL has no schemas below the database,
+     * so the list is empty there.
+     *
+     * @param conn The database connection
+     * @return The schema names, system schemas excluded
+     * @throws SQLException If a database error occurs
+     */
+    public static List<String> getSchemas(Connection conn) throws SQLException {
+        List<String> schemas = new ArrayList<>();
+        try (ResultSet rs = conn.getMetaData().getSchemas()) {
+            while (rs.next()) {
+                String schema = rs.getString("TABLE_SCHEM");
+                if (isSystemSchema(schema)) {
+                    continue;
+                }
+                schemas.add(schema);
+            }
+        }
+        return schemas;
+    }
+
+    /**
+     * Get one page of table and/or view names, ordered by name. Schema and name filter
+     * are pushed into the query, so only the requested page travels over the wire on
+     * PostgreSQL and MySQL; other databases page over the metadata result set.
+     * <p>
+     * Objects outside the data source's default schema (see {@link #getDefaultSchema})
+     * are named schema.name, so a pick from another schema resolves to that schema and
+     * same-named tables of several schemas stay apart.
+     *
+     * @param conn The database connection
+     * @param dataSource The data source (its dbType selects the query)
+     * @param schema Only objects of this schema, or null for all non-system schemas
+     * @param nameFilter Case-insensitive substring of the name, or null/empty for all
+     * @param includeTables Include base tables
+     * @param includeViews Include views
+     * @param offset Number of names to skip
+     * @param limit Maximum number of names to return
+     * @return The names on the page
+     * @throws SQLException If a database error occurs
+     */
+    public static List<String> getTablesPage(Connection conn, DataSource dataSource, String schema,
+                                             String nameFilter, boolean includeTables, boolean includeViews,
+                                             int offset, int limit) throws SQLException {
+        List<String> names = new ArrayList<>();
+        if (!includeTables && !includeViews) {
+            return names;
+        }
+        String like = "%" + escapeLike(nameFilter == null ? "" : nameFilter) + "%";
+
+        String sql;
+        String defaultSchema = getDefaultSchema(dataSource);
+        if ("postgres".equals(dataSource.getDbType())) {
+            String kinds = includeTables && includeViews ? "'r', 'p', 'v'" : includeTables ? "'r', 'p'" : "'v'";
+            sql = "SELECT CASE WHEN n.nspname = ? THEN c.relname ELSE n.nspname || '.' || c.relname END AS name " +
+                    "FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                    "WHERE c.relkind IN (" + kinds + ") " +
+                    "AND n.nspname NOT IN ('pg_catalog', 'information_schema') AND n.nspname NOT LIKE 'pg_toast%' " +
+                    "AND (CAST(? AS text) IS NULL OR n.nspname = ?) AND c.relname ILIKE ? " +
+                    "ORDER BY name LIMIT ? OFFSET ?";
+        } else if ("mysql".equals(dataSource.getDbType())) {
+            String types = includeTables && includeViews ? "'BASE TABLE', 'VIEW'" : includeTables ? "'BASE TABLE'" : "'VIEW'";
+            // The configured schema need not be the database of the JDBC URL
+            sql = "SELECT CASE WHEN TABLE_SCHEMA = DATABASE() THEN TABLE_NAME " +
+                    "ELSE CONCAT(TABLE_SCHEMA, '.', TABLE_NAME) END AS name FROM information_schema.TABLES " +
+                    "WHERE TABLE_TYPE IN (" + types + ") " +
+                    "AND TABLE_SCHEMA = COALESCE(?, DATABASE()) AND TABLE_NAME LIKE ? " +
+                    "ORDER BY TABLE_NAME LIMIT ? OFFSET ?";
+            if (schema == null) {
+                schema = dataSource.getSchemaName();
+            }
+        } else {
+            return getTablesPageFromMetadata(conn, schema, defaultSchema, like, includeTables, includeViews, offset, limit);
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            if ("postgres".equals(dataSource.getDbType())) {
+                ps.setString(index++, defaultSchema);
+                ps.setString(index++, schema);
+            }
+            ps.setString(index++, schema);
+            ps.setString(index++, like);
+            ps.setInt(index++, limit);
+            ps.setInt(index, offset);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return The schema unqualified names resolve to: the configured schema, PostgreSQL's
+     *         public schema, or null if unknown
+     */
+    public static String getDefaultSchema(DataSource dataSource) {
+        if (dataSource.getSchemaName() != null) {
+            return dataSource.getSchemaName();
+        }
+        return "postgres".equals(dataSource.getDbType()) ? "public" : null;
+    }
+
+    /**
+     * @return name, prefixed with its schema if that is known and not the default one
+     */
+    static String qualifiedName(String schema, String name, String defaultSchema) {
+        return schema == null || defaultSchema == null || schema.equals(defaultSchema) ? name : schema + "." + name;
+    }
+
+    private static List<String> getTablesPageFromMetadata(Connection conn, String schema, String defaultSchema,
+                                                          String like, boolean includeTables, boolean includeViews,
+                                                          int offset, int limit) throws SQLException {
+        List<String> types = new ArrayList<>();
+        if (includeTables) {
+            types.add("TABLE");
+        }
+        if (includeViews) {
+            types.add("VIEW");
+        }
+
+        // Metadata patterns are case-sensitive, so the name filter is applied here
+        String needle = like.substring(1, like.length() - 1).replace("\\", "").toLowerCase();
+        // Without a known default schema, same-named tables of several schemas list once
+        Set<String> names = new LinkedHashSet<>();
+        Set<String> skipped = new HashSet<>();
+        try (ResultSet rs = conn.getMetaData().getTables(null, schema, "%", types.toArray(new String[0]))) {
+            while (rs.next() && names.size() < limit) {
+                String tableSchema = rs.getString("TABLE_SCHEM");
+                if (isSystemSchema(tableSchema)) {
+                    continue;
+                }
+                String name = rs.getString("TABLE_NAME");
+                if (!name.toLowerCase().contains(needle)) {
+                    continue;
+                }
+                name = qualifiedName(tableSchema, name, defaultSchema);
+                if (skipped.size() < offset) {
+                    skipped.add(name);
+                    continue;
+                }
+                if (!skipped.contains(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static boolean isSystemSchema(String schema) {
+        return schema != null && ("pg_catalog".equals(schema) || "information_schema".equals(schema));
+    }
+
     /**
      * Check if a database object name represents a view
      *
@@ -182,6 +421,18 @@ public class DatabaseConnectionManager {
         return name != null && name.startsWith("VIEW: ") ? name.substring(6) : name;
     }
 
+    /**
+     * @return The schema of a schema.name from {@link #getTablesPage}, or null if unqualified
+     */
+    private static String schemaOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? null : name.substring(0, dot);
+    }
+
+    private static String tableOf(String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
     /**
      * Get a list of columns from a table or view
      *
@@ -200,7 +451,7 @@ public class DatabaseConnectionManager {
         try {
             DatabaseMetaData metaData = conn.getMetaData();
 
-            try (ResultSet rs = metaData.getColumns(null, null, cleanName, "%")) {
+            try (ResultSet rs = metaData.getColumns(null, schemaOf(cleanName), tableOf(cleanName), "%")) {
                 while (rs.next()) {
                     String columnName = rs.getString("COLUMN_NAME");
                     columns.add(columnName);
@@ -235,4 +486,137 @@ public class DatabaseConnectionManager {
 
         return columns;
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the metadata of the columns of one table or view: type, size, nullability,
+     * primary key and index membership. Used for objects outside the catalog snapshot;
+     * the snapshot captures the same information in bulk.
+     *
+     * @param conn The database connection
+     * @param tableOrViewName The table or view name (may have "VIEW: " prefix)
+     * @return The column metadata in ordinal order
+     * @throws SQLException If a database error occurs
+     */
+    public static List<ColumnMetadata> getColumnMetadata(Connection conn, String tableOrViewName) throws SQLException {
+        String cleanName = getCleanName(tableOrViewName);
+        DatabaseMetaData metaData = conn.getMetaData();
+
+        Map<String, ColumnMetadata> columns = new LinkedHashMap<>();
+        String schema = schemaOf(cleanName);
+        String table = tableOf(cleanName);
+        try (ResultSet rs = metaData.getColumns(null, schema, table, "%")) {
+            while (rs.next()) {
+                // The same name in several schemas: keep the first, like the table lists do
+                if (schema == null) {
+                    schema = rs.getString("TABLE_SCHEM");
+                } else if (!schema.equals(rs.getString("TABLE_SCHEM"))) {
+                    continue;
+                }
+                ColumnMetadata column = readColumnMetadata(rs);
+                columns.put(column.getName(), column);
+            }
+        }
+
+        if (columns.isEmpty()) {
+            // Views some drivers do not describe: fall back to names only
+            for (String name : getColumns(conn, cleanName)) {
+                columns.put(name, new ColumnMetadata(name));
+            }
+            return new ArrayList<>(columns.values());
+        }
+
+        try (ResultSet rs = metaData.getPrimaryKeys(null, schema, table)) {
+            while (rs.next()) {
+                ColumnMetadata column = columns.get(rs.getString("COLUMN_NAME"));
+                if (column != null) {
+                    column.setPrimaryKey(true);
+                }
+            }
+        }
+
+        // Count the columns of each index so single-column unique indexes can be told apart
+        Map<String, List<String>> indexColumns = new HashMap<>();
+        Set<String> uniqueIndexes = new HashSet<>();
+        try (ResultSet rs = metaData.getIndexInfo(null, schema, table, false, true)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                String columnName = rs.getString("COLUMN_NAME");
+                if (indexName == null || columnName == null) {
+                    continue;
+                }
+                indexColumns.computeIfAbsent(indexName, k -> new ArrayList<>()).add(columnName);
+                if (!rs.getBoolean("NON_UNIQUE")) {
+                    uniqueIndexes.add(indexName);
+                }
+            }
+        }
+        for (Map.Entry<String, List<String>> index : indexColumns.entrySet()) {
+            boolean single = index.getValue().size() == 1;
+            for (String columnName : index.getValue()) {
+                ColumnMetadata column = columns.get(columnName);
+                if (column != null) {
+                    column.setIndexed(true);
+                    if (single && uniqueIndexes.contains(index.getKey())) {
+                        column.setUnique(true);
+                    }
+                }
+            }
+        }
+
+        List<String> primaryKey = new ArrayList<>();
+        for (ColumnMetadata column : columns.values()) {
+            if (column.isPrimaryKey()) {
+                primaryKey.add(column.getName());
+            }
+        }
+        if (primaryKey.size() == 1) {
+            columns.get(primaryKey.get(0)).setUnique(true);
+        }
+
+        return new ArrayList<>(columns.values());
+    }
+
+    /**
+     * Get the tables a table refers to through its foreign keys
+     *
+     * @param conn The database connection
+     * @param dataSource The data source, whose default schema leaves names unqualified
+     * @param tableName The table name
+     * @return The names of the referenced tables, named like {@link #getTablesPage} names
+     *         them, without the table itself
+     * @throws SQLException If a database error occurs
+     */
+    public static Set<String> getReferencedTables(Connection conn, DataSource dataSource, String tableName)
+            throws SQLException {
+        String cleanName = getCleanName(tableName);
+        String defaultSchema = getDefaultSchema(dataSource);
+        Set<String> tables = new LinkedHashSet<>();
+        // MySQL reports databases as catalogs; without one it searches every database
+        try (ResultSet rs = conn.getMetaData().getImportedKeys(conn.getCatalog(), schemaOf(cleanName), tableOf(cleanName))) {
+            while (rs.next()) {
+                String referenced = rs.getString("PKTABLE_NAME");
+                if (referenced == null) {
+                    continue;
+                }
+                referenced = qualifiedName(rs.getString("PKTABLE_SCHEM"), referenced, defaultSchema);
+                if (!referenced.equals(cleanName)) {
+                    tables.add(referenced);
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Read the current row of a DatabaseMetaData.getColumns result
+     */
+    static ColumnMetadata readColumnMetadata(ResultSet rs) throws SQLException {
+        ColumnMetadata column = new ColumnMetadata(rs.getString("COLUMN_NAME"));
+        column.setJdbcType(rs.getInt("DATA_TYPE"));
+        column.setTypeName(rs.getString("TYPE_NAME"));
+        column.setPrecision(rs.getInt("COLUMN_SIZE"));
+        column.setScale(rs.getInt("DECIMAL_DIGITS"));
+        column.setNullable(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls);
+        return column;
+    }
+}
@@ -50,6 +50,7 @@ public class JsonConfig {
         private List<String> columns = new ArrayList<>();
         private String sourceTableName; // Only for target tables
         private String dataSourceName;
+        private List<ColumnMetadata> columnMetadata = new ArrayList<>(); // Types and keys, where known
 
         public String getDataSourceName() {
             return dataSourceName;
@@ -82,6 +83,14 @@ public class JsonConfig {
         public void setSourceTableName(String sourceTableName) {
             this.sourceTableName = sourceTableName;
         }
+
+        public List<ColumnMetadata> getColumnMetadata() {
+            return columnMetadata;
+        }
+
+        public void setColumnMetadata(List<ColumnMetadata> columnMetadata) {
+            this.columnMetadata = columnMetadata;
+        }
     }
 
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -307,6 +316,7 @@ public class JsonConfig {
             tableConfig.setName(entry.getKey());
             tableConfig.setColumns(entry.getValue().getTable().getColumns());
             tableConfig.setDataSourceName(entry.getValue().getTable().getDataSourceName());
+            tableConfig.setColumnMetadata(selectedColumnMetadata(entry.getValue().getTable()));
             config.getSourceTables().add(tableConfig);
         }
 
@@ -316,6 +326,7 @@ public class JsonConfig {
             tableConfig.setName(entry.getKey());
             tableConfig.setColumns(entry.getValue().getTable().getColumns());
             tableConfig.setDataSourceName(entry.getValue().getTable().getDataSourceName());
+            tableConfig.setColumnMetadata(selectedColumnMetadata(entry.getValue().getTable()));
             tableConfig.setSourceTableName(entry.getValue().getSourceTable().getTable().getName());
             config.getTargetTables().add(tableConfig);
         }
@@ -376,6 +387,20 @@ public class JsonConfig {
         mapper.writerWithDefaultPrettyPrinter().writeValue(file, config);
     }
 
+    /**
+     * Metadata of the table's selected columns, plus its key columns so upserts and
+     * key-based plans still know the primary key when it was not selected
+     */
+    private static List<ColumnMetadata> selectedColumnMetadata(Table table) {
+        List<ColumnMetadata> metadata = new ArrayList<>();
+        for (ColumnMetadata column : table.getColumnMetadata().values()) {
+            if (table.getColumns().contains(column.getName()) || column.isPrimaryKey()) {
+                metadata.add(column);
+            }
+        }
+        return metadata;
+    }
+
     public static Configuration loadFromFile(File file) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         return mapper.readValue(file, Configuration.class);
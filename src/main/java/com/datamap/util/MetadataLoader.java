@@ -0,0 +1,133 @@
+package com.datamap.util;
+
+import javax.swing.*;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs database metadata requests off the Swing event dispatch thread.
+ * <p>
+ * Requests are grouped by a key (usually one per combo box). A new request for a key
+ * supersedes the previous one: if the old request has not started yet it is cancelled,
+ * if it is already running its result is dropped. Requests wait a short debounce delay
+ * before they start, so quickly stepping through a combo box only fetches the last item.
+ * Callbacks are always invoked on the event dispatch thread.
+ */
+public class MetadataLoader {
+    private static final int THREADS = 2;
+    private static final long DEBOUNCE_MILLIS = 150;
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(THREADS,
+            new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "metadata-loader-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private static final Map<String, Request<?>> LATEST = new ConcurrentHashMap<>();
+
+    static {
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Receives the outcome of a request on the event dispatch thread
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onError(Exception e);
+    }
+
+    private static class Request<T> implements Runnable {
+        final String key;
+        final Callable<T> task;
+        final Callback<T> callback;
+        volatile ScheduledFuture<?> future;
+
+        Request(String key, Callable<T> task, Callback<T> callback) {
+            this.key = key;
+            this.task = task;
+            this.callback = callback;
+        }
+
+        boolean isCurrent() {
+            return LATEST.get(key) == this;
+        }
+
+        @Override
+        public void run() {
+            if (!isCurrent()) {
+                return;
+            }
+            try {
+                final T result = task.call();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (LATEST.remove(key, Request.this)) {
+                            callback.onSuccess(result);
+                        }
+                    }
+                });
+            } catch (final Exception e) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (LATEST.remove(key, Request.this)) {
+                            callback.onError(e);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Submit a request, superseding any pending request with the same key
+     *
+     * @param key Identifies the consumer, e.g. "addColumns.source"
+     * @param task The blocking work, run on a background thread
+     * @param callback Receives the result on the event dispatch thread, unless superseded
+     */
+    public static <T> void submit(String key, Callable<T> task, Callback<T> callback) {
+        Request<T> request = new Request<>(key, task, callback);
+        Request<?> previous = LATEST.put(key, request);
+        if (previous != null && previous.future != null) {
+            // Never interrupt a running JDBC call; its result is discarded instead
+            previous.future.cancel(false);
+        }
+        request.future = EXECUTOR.schedule(request, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel the pending request with the given key; its callback will not be invoked
+     *
+     * @param key The request key
+     */
+    public static void cancel(String key) {
+        Request<?> previous = LATEST.remove(key);
+        if (previous != null && previous.future != null) {
+            previous.future.cancel(false);
+        }
+    }
+
+    /**
+     * @param key The request key
+     * @return true if a request with this key has not delivered its result yet
+     */
+    public static boolean isPending(String key) {
+        return LATEST.containsKey(key);
+    }
+}
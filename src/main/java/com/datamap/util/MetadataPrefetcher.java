@@ -0,0 +1,209 @@
+package com.datamap.util;
+
+import com.datamap.model.DataSource;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Warms the {@link CatalogService} snapshots of all configured data sources in parallel,
+ * so the first table list is served from memory.
+ * <p>
+ * Loads run on a small bounded pool. Each data source gets its own time limit counted from
+ * the moment its load starts; a data source that does not answer in time is reported as
+ * timed out and its worker is interrupted, without holding up the others. Progress is
+ * reported on the event dispatch thread.
+ */
+public class MetadataPrefetcher {
+    private static final int MAX_THREADS = 4;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    public enum State {
+        PENDING, LOADING, DONE, FAILED, TIMED_OUT
+    }
+
+    /**
+     * Receives status changes on the event dispatch thread
+     */
+    public interface Listener {
+        /**
+         * @param status The state of every data source, in configuration order
+         */
+        void statusChanged(Map<String, State> status);
+    }
+
+    private final Map<String, State> status = new LinkedHashMap<>();
+    private final Map<String, String> errors = new LinkedHashMap<>();
+    private final Listener listener;
+    private ExecutorService workers;
+    private ScheduledExecutorService watchdog;
+
+    public MetadataPrefetcher(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start loading the snapshots of the given data sources; returns immediately
+     *
+     * @param dataSources The data sources to warm
+     */
+    public synchronized void start(List<DataSource> dataSources) {
+        if (dataSources.isEmpty()) {
+            return;
+        }
+        workers = Executors.newFixedThreadPool(Math.min(MAX_THREADS, dataSources.size()),
+                daemonThreads("metadata-prefetch"));
+        watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreads("metadata-prefetch-watchdog"));
+
+        for (DataSource dataSource : dataSources) {
+            status.put(dataSource.getName(), State.PENDING);
+        }
+        fireStatusChanged();
+
+        for (final DataSource dataSource : dataSources) {
+            final AtomicReference<Future<?>> self = new AtomicReference<>();
+            self.set(workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    prefetch(dataSource, self);
+                }
+            }));
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Stop all loads that have not finished yet
+     */
+    public synchronized void cancel() {
+        if (workers != null) {
+            workers.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Error or timeout messages by data source name, for a tooltip or dialog
+     */
+    public synchronized Map<String, String> getErrors() {
+        return new LinkedHashMap<>(errors);
+    }
+
+    private void prefetch(DataSource dataSource, final AtomicReference<Future<?>> self) {
+        final String name = dataSource.getName();
+        if (!update(name, State.PENDING, State.LOADING, null)) {
+            return;
+        }
+
+        // The clock starts when this data source's load does, not when the batch was queued
+        Future<?> timer = watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (update(name, State.LOADING, State.TIMED_OUT, "No answer within " + TIMEOUT_SECONDS + " s")) {
+                    // Frees the worker if the driver honours interrupts; the result is ignored either way
+                    self.get().cancel(true);
+                }
+            }
+        }, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            CatalogService.getSnapshot(dataSource);
+            update(name, State.LOADING, State.DONE, null);
+        } catch (Exception e) {
+            update(name, State.LOADING, State.FAILED, e.getMessage());
+        } finally {
+            timer.cancel(false);
+        }
+    }
+
+    /**
+     * Move a data source from one state to another; the first transition out of a state wins
+     *
+     * @return true if the data source was in the expected state
+     */
+    private boolean update(String name, State expected, State next, String error) {
+        synchronized (this) {
+            if (status.get(name) != expected) {
+                return false;
+            }
+            status.put(name, next);
+            if (error != null) {
+                errors.put(name, error);
+            }
+            if (!status.containsValue(State.PENDING) && !status.containsValue(State.LOADING)) {
+                watchdog.shutdown();
+            }
+        }
+        fireStatusChanged();
+        return true;
+    }
+
+    private void fireStatusChanged() {
+        final Map<String, State> copy;
+        synchronized (this) {
+            copy = Collections.unmodifiableMap(new LinkedHashMap<>(status));
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                listener.statusChanged(copy);
+            }
+        });
+    }
+
+    /**
+     * Summarise a status map for a status bar, e.g. "Metadata: 2/3 loaded, 1 failed"
+     *
+     * @param status The status passed to {@link Listener#statusChanged}
+     * @return A short human-readable summary
+     */
+    public static String summarize(Map<String, State> status) {
+        int done = 0;
+        int failed = 0;
+        int timedOut = 0;
+        for (State state : status.values()) {
+            if (state == State.DONE) {
+                done++;
+            } else if (state == State.FAILED) {
+                failed++;
+            } else if (state == State.TIMED_OUT) {
+                timedOut++;
+            }
+        }
+
+        List<String> parts = new ArrayList<>();
+        parts.add(done + "/" + status.size() + " loaded");
+        if (failed > 0) {
+            parts.add(failed + " failed");
+        }
+        if (timedOut > 0) {
+            parts.add(timedOut + " timed out");
+        }
+        return "Metadata: " + String.join(", ", parts);
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
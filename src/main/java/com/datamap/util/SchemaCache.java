@@ -0,0 +1,87 @@
+package com.datamap.util;
+
+import com.datamap.model.DataSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of catalog snapshots under ~/.data-mapping-wizard/schema-cache.
+ * Each data source gets one gzipped JSON file; whether it is still current is decided
+ * by the caller using the stored schema fingerprints.
+ */
+public class SchemaCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Read the cached snapshot of a data source
+     *
+     * @param dataSource The data source
+     * @return The cached snapshot, or null if there is none or it cannot be read
+     */
+    public static CatalogSnapshot load(DataSource dataSource) {
+        File file = cacheFile(dataSource);
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            CatalogSnapshot snapshot = MAPPER.readValue(in, CatalogSnapshot.class);
+            // Files written before the last format change lack fields and are rebuilt
+            return snapshot.getFormatVersion() == CatalogSnapshot.FORMAT_VERSION ? snapshot : null;
+        } catch (IOException e) {
+            // A corrupt or outdated cache file is simply rebuilt
+            System.err.println("Ignoring unreadable schema cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write the snapshot of a data source, replacing the file through
+     * {@link ConfigManager#replaceFile}.
+     *
+     * @param dataSource The data source
+     * @param snapshot The snapshot to store
+     */
+    public static void save(DataSource dataSource, CatalogSnapshot snapshot) {
+        File file = cacheFile(dataSource);
+        try {
+            ConfigManager.replaceFile(file, new ConfigManager.Contents() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    try (OutputStream gzip = new GZIPOutputStream(out)) {
+                        MAPPER.writeValue(gzip, snapshot);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to write schema cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete the cached snapshot of a data source
+     *
+     * @param dataSource The data source
+     */
+    public static void delete(DataSource dataSource) {
+        cacheFile(dataSource).delete();
+    }
+
+    private static File cacheFile(DataSource dataSource) {
+        // The name keeps the file recognisable, the checksum keeps different servers apart
+        CRC32 crc = new CRC32();
+        crc.update((dataSource.getJdbcUrl() + "|" + dataSource.getUsername() + "|" + dataSource.getSchemaName())
+                .getBytes(StandardCharsets.UTF_8));
+        String safeName = String.valueOf(dataSource.getName()).replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(ConfigManager.getSchemaCacheDir(),
+                safeName + "-" + Long.toHexString(crc.getValue()) + ".json.gz");
+    }
+}
@@ -0,0 +1,109 @@
+package com.datamap.util;
+
+import com.datamap.model.DataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes a per-table signature of a data source's schema with a single query against
+ * the system catalog. Comparing two fingerprints tells which tables were added, dropped
+ * or altered without reading any column metadata.
+ */
+public class SchemaFingerprint {
+
+    // One row per table/view: a hash over its kind, the (name, type, nullability) of its
+    // columns and the definition of its indexes
+    private static final String POSTGRES_SQL =
+            "SELECT n.nspname, c.relname, md5(c.relkind || ':' || coalesce(string_agg(" +
+            "a.attname || ':' || a.atttypid || ':' || a.atttypmod || ':' || a.attnotnull, ',' ORDER BY a.attnum), '') " +
+            "|| ':' || coalesce((SELECT string_agg(i.indkey::text || ':' || i.indisunique || ':' || i.indisprimary, ',' " +
+            "ORDER BY i.indexrelid) FROM pg_index i WHERE i.indrelid = c.oid), '')) " +
+            "FROM pg_class c " +
+            "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+            "LEFT JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped " +
+            "WHERE c.relkind IN ('r', 'v', 'p') " +
+            "AND n.nspname NOT IN ('pg_catalog', 'information_schema') AND n.nspname NOT LIKE 'pg_toast%' " +
+            "AND (CAST(? AS text) IS NULL OR n.nspname = ?) " +
+            "GROUP BY c.oid, n.nspname, c.relname, c.relkind";
+
+    // UPDATE_TIME moves on every data change, so CREATE_TIME (bumped by ALTER TABLE) and
+    // checksums over the column and index definitions are used instead
+    private static final String MYSQL_SQL =
+            "SELECT NULL, t.TABLE_NAME, CONCAT(t.TABLE_TYPE, ':', COALESCE(t.CREATE_TIME, ''), ':', " +
+            "COUNT(c.COLUMN_NAME), ':', COALESCE(SUM(CRC32(CONCAT_WS(':', c.ORDINAL_POSITION, c.COLUMN_NAME, " +
+            "c.COLUMN_TYPE, c.IS_NULLABLE))), 0), ':', " +
+            "(SELECT COALESCE(SUM(CRC32(CONCAT_WS(':', s.INDEX_NAME, s.SEQ_IN_INDEX, s.COLUMN_NAME, s.NON_UNIQUE))), 0) " +
+            "FROM information_schema.STATISTICS s WHERE s.TABLE_SCHEMA = t.TABLE_SCHEMA AND s.TABLE_NAME = t.TABLE_NAME)) " +
+            "FROM information_schema.TABLES t " +
+            "LEFT JOIN information_schema.COLUMNS c ON c.TABLE_SCHEMA = t.TABLE_SCHEMA AND c.TABLE_NAME = t.TABLE_NAME " +
+            "WHERE t.TABLE_SCHEMA = COALESCE(?, DATABASE()) " +
+            "GROUP BY t.TABLE_SCHEMA, t.TABLE_NAME, t.TABLE_TYPE, t.CREATE_TIME";
+
+    /**
+     * Fetch the per-table signatures of a data source, limited to its schema if one is set
+     *
+     * @param conn The database connection
+     * @param dataSource The data source (its dbType selects the query)
+     * @return Signatures keyed by {@link #key(String, String)}, or null if the database
+     *         type is not supported or the catalog could not be read
+     */
+    public static Map<String, String> fetch(Connection conn, DataSource dataSource) {
+        String sql;
+        if ("postgres".equals(dataSource.getDbType())) {
+            sql = POSTGRES_SQL;
+        } else if ("mysql".equals(dataSource.getDbType())) {
+            sql = MYSQL_SQL;
+        } else {
+            return null;
+        }
+
+        Map<String, String> fingerprints = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, dataSource.getSchemaName());
+            if ("postgres".equals(dataSource.getDbType())) {
+                ps.setString(2, dataSource.getSchemaName());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    fingerprints.put(key(rs.getString(1), rs.getString(2)), rs.getString(3));
+                }
+            }
+        } catch (SQLException e) {
+            // Missing catalog privileges just disable the cache for this data source
+            System.err.println("Schema fingerprint query failed: " + e.getMessage());
+            return null;
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Build the fingerprint key of a table
+     *
+     * @param schema The schema name (null where the database has none, e.g. MySQL)
+     * @param name The table name
+     * @return The key
+     */
+    public static String key(String schema, String name) {
+        return (schema == null ? "" : schema) + "\t" + name;
+    }
+
+    /**
+     * @return The schema part of a fingerprint key, or null if there is none
+     */
+    public static String schemaOf(String key) {
+        String schema = key.substring(0, key.indexOf('\t'));
+        return schema.isEmpty() ? null : schema;
+    }
+
+    /**
+     * @return The table name part of a fingerprint key
+     */
+    public static String nameOf(String key) {
+        return key.substring(key.indexOf('\t') + 1);
+    }
+}